@@ -23,58 +23,398 @@
 
 package entity;
 
-import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
+ * A model given by a solver. It does not hold a list of Literal anymore:
+ * the names are shared by all the models of a problem (SymbolTable) and the
+ * model only holds
+ * - for SAT, the polarity of each DIMACS code, one bit per code (bit i of
+ *   polarity[i/64] is the value of the code i);
+ * - for SMT and QBF, the value of each code in a double[] (NaN for the '?'
+ *   values of QBF), and the text printed by the solver for the integers
+ *   that a double cannot hold exactly (more than 15 digits).
+ * The Literal objects are only created when the model is iterated.
  *
  * @author Abdel
  * @modified by Maël
  */
 public class Model implements Iterable<Literal>{
 
-	public List<Literal> literals = new ArrayList<Literal>();
+	private final SymbolTable symbols;
+	/** The codes of the model are 1..nbCodes */
+	private final int nbCodes;
+	private final long[] polarity;
+	private final double[] values;
+	/**
+	 * texts[code-1] is the value of code as printed by the solver if the
+	 * double is not exact, else null; null if all the doubles are exact
+	 */
+	private final String[] texts;
+	/** 128-bit fingerprint, computed when first needed (see fingerprint()) */
+	private long fingerprint1;
+	private long fingerprint2;
+	private boolean hasFingerprint = false;
+
+	/**
+	 * SAT model.
+	 * @param symbols the names of the codes (can be null: the codes are then
+	 * used as names)
+	 * @param rawModel the DIMACS literals of the model (e.g. [1,-2,3]), the
+	 * 0 are ignored
+	 */
+	public Model(SymbolTable symbols, int[] rawModel) {
+		int max = 0;
+		for (int literal : rawModel) {
+			max = Math.max(max, Math.abs(literal));
+		}
+		this.symbols = symbols;
+		this.nbCodes = max;
+		this.polarity = new long[(max >> 6) + 1];
+		this.values = null;
+		this.texts = null;
+		for (int literal : rawModel) {
+			if (literal > 0)
+				polarity[literal >> 6] |= 1L << literal;
+		}
+	}
+
+	/**
+	 * SAT model read back from its polarity bitset (see getPolarity()).
+	 * @param symbols the names of the codes (can be null)
+	 * @param nbCodes the codes of the model are 1..nbCodes
+	 * @param polarity bit i of polarity[i/64] is the value of the code i
+	 */
+	public Model(SymbolTable symbols, int nbCodes, long[] polarity) {
+		this.symbols = symbols;
+		this.nbCodes = nbCodes;
+		this.polarity = polarity;
+		this.values = null;
+		this.texts = null;
+	}
+
+	/**
+	 * SMT or QBF model.
+	 * @param symbols the names of the codes 1..values.length
+	 * @param values values[code-1] is the value of code (NaN if unknown)
+	 */
+	public Model(SymbolTable symbols, double[] values) {
+		this(symbols, values, null);
+	}
+
+	/**
+	 * SMT model with exact integers.
+	 * @param symbols the names of the codes 1..values.length
+	 * @param values values[code-1] is the value of code (NaN if unknown)
+	 * @param texts texts[code-1] is the exact value of code when
+	 * values[code-1] is not exact (an integer of more than 15 digits), else
+	 * null (texts can be null if all the values are exact)
+	 */
+	public Model(SymbolTable symbols, double[] values, String[] texts) {
+		this.symbols = symbols;
+		this.nbCodes = values.length;
+		this.polarity = null;
+		this.values = values;
+		this.texts = texts;
+	}
 
 	/**
 	 * WARNING: two models are equals only
-	 * when the literals are at the same place
-	 * in the arraylist
+	 * when the literals are in the same order
+	 * (the order of the codes in the symbol table)
 	 * @note Added for filtering '&45' literals (issue #88)
 	 */
 	@Override
 	public boolean equals(Object obj) {
+		if (!(obj instanceof Model))
+			return false;
 		Model m = (Model)obj;
-		boolean areEqual = true; 
-		if(this.literals.size() != m.literals.size()) {
-			areEqual = false;
+		if (polarity != null && m.polarity != null && symbols == m.symbols
+				&& nbCodes == m.nbCodes) {
+			// Only the visible literals are compared, 64 at a time
+			for (int word = 0; word < polarity.length; word++) {
+				long visible = (symbols == null) ? -1L : ~symbols.getHiddenWord(word);
+				if (((polarity[word] ^ m.polarity[word]) & visible) != 0)
+					return false;
+			}
+			return true;
 		}
-		for (int i = 0; i < this.literals.size() && areEqual; i++) {
-			if(!this.literals.get(i).equals(m.literals.get(i))) {
-				areEqual = false;
+		Iterator<Literal> it1 = this.iterator();
+		Iterator<Literal> it2 = m.iterator();
+		while (it1.hasNext() && it2.hasNext()) {
+			Literal l1 = it1.next();
+			Literal l2 = it2.next();
+			if (!l1.equals(l2) || !equalsOrNull(l1.getArithmetic_value(), l2.getArithmetic_value())) {
+				return false;
 			}
 		}
-		return areEqual;
+		return !it1.hasNext() && !it2.hasNext();
 	}
 
-	public void addLiteral(Literal literal) {
-                literals.add(literal);
+	private static boolean equalsOrNull(String s1, String s2) {
+		return (s1 == null) ? s2 == null : s1.equals(s2);
+	}
+
+	@Override
+	public int hashCode() {
+		computeFingerprint();
+		return (int) (fingerprint1 ^ (fingerprint1 >>> 32));
+	}
+
+	/**
+	 * @return the first half of the 128-bit fingerprint of the visible
+	 * literals (see ModelSet). Two equal models have the same fingerprint.
+	 */
+	public long getFingerprint1() {
+		computeFingerprint();
+		return fingerprint1;
+	}
+
+	/**
+	 * @return the second half of the 128-bit fingerprint
+	 */
+	public long getFingerprint2() {
+		computeFingerprint();
+		return fingerprint2;
+	}
+
+	/**
+	 * The fingerprint only depends on the sequence of the visible values, as
+	 * equals() does: the hidden bits are squeezed out of the polarity bitset
+	 * before hashing (a word without hidden literal is hashed at once).
+	 */
+	private synchronized void computeFingerprint() {
+		if (hasFingerprint)
+			return;
+		Hasher h = new Hasher();
+		if (polarity != null) {
+			for (int word = 0; word < polarity.length; word++) {
+				long visible = (symbols == null) ? -1L : ~symbols.getHiddenWord(word);
+				if (word == 0)
+					visible &= ~1L; // There is no code 0
+				if (word == polarity.length - 1 && ((nbCodes + 1) & 63) != 0)
+					visible &= (1L << ((nbCodes + 1) & 63)) - 1; // No code > nbCodes
+				if (visible == -1L) {
+					h.appendBits(polarity[word], 64);
+				} else {
+					for (long v = visible; v != 0; v &= v - 1) {
+						h.appendBits(polarity[word] >>> Long.numberOfTrailingZeros(v), 1);
+					}
+				}
+			}
+		} else {
+			for (int code = 1; code <= nbCodes; code++) {
+				if (isHidden(code))
+					continue;
+				double value = values[code - 1];
+				h.appendBits(getName(code).hashCode(), 64);
+				// -0.0 and 0.0 are both shown as "0"
+				h.appendBits(Double.doubleToLongBits(value == 0 ? 0.0 : value), 64);
+			}
+		}
+		h.finish();
+		fingerprint1 = h.h1;
+		fingerprint2 = h.h2;
+		hasFingerprint = true;
+	}
+
+	/**
+	 * Two independent 64-bit hashes of a stream of bits
+	 */
+	private static class Hasher {
+		long h1 = 0x243F6A8885A308D3L;
+		long h2 = 0x13198A2E03707344L;
+		private long buffer = 0;
+		private int bufferBits = 0;
+		private long length = 0;
+
+		/** Appends the n lowest bits of bits (1 <= n <= 64) */
+		void appendBits(long bits, int n) {
+			if (n < 64)
+				bits &= (1L << n) - 1;
+			buffer |= bits << bufferBits;
+			length += n;
+			if (bufferBits + n >= 64) {
+				mix(buffer);
+				buffer = (bufferBits == 0) ? 0 : bits >>> (64 - bufferBits);
+				bufferBits = bufferBits + n - 64;
+			} else {
+				bufferBits += n;
+			}
+		}
+
+		private void mix(long word) {
+			h1 = Long.rotateLeft(h1 ^ fmix(word), 31) * 0x9E3779B97F4A7C15L;
+			h2 = Long.rotateLeft(h2 ^ fmix(word ^ 0x5851F42D4C957F2DL), 29) * 0xC2B2AE3D27D4EB4FL;
+		}
+
+		void finish() {
+			if (bufferBits > 0)
+				mix(buffer);
+			h1 = fmix(h1 ^ length);
+			h2 = fmix(h2 ^ length);
+		}
+
+		/** Finalizer of MurmurHash3 */
+		private static long fmix(long k) {
+			k ^= k >>> 33;
+			k *= 0xFF51AFD7ED558CCDL;
+			k ^= k >>> 33;
+			k *= 0xC4CEB9FE1A85EC53L;
+			k ^= k >>> 33;
+			return k;
+		}
+	}
+
+	/**
+	 * @return true if this model is a SAT model (see isTrue()), false if it
+	 * holds SMT or QBF values (see getValue())
+	 */
+	public boolean isBoolean() {
+		return polarity != null;
+	}
+
+	/**
+	 * @return the codes of the model are 1..getNbCodes()
+	 */
+	public int getNbCodes() {
+		return nbCodes;
+	}
+
+	/**
+	 * @return the names of the codes (can be null)
+	 */
+	public SymbolTable getSymbolTable() {
+		return symbols;
+	}
+
+	/**
+	 * @return the polarity of code in a SAT model
+	 */
+	public boolean isTrue(int code) {
+		return (polarity[code >> 6] & (1L << code)) != 0;
+	}
+
+	/**
+	 * @return the value of code in a SMT or QBF model (NaN if unknown)
+	 */
+	public double getValue(int code) {
+		return values[code - 1];
+	}
+
+	/**
+	 * @return the value of code in a SMT or QBF model as it was given by the
+	 * solver (see formatValue()); exact for the integers that a double cannot
+	 * hold
+	 */
+	public String getValueText(int code) {
+		if (texts != null && texts[code - 1] != null)
+			return texts[code - 1];
+		return formatValue(values[code - 1]);
+	}
+
+	/**
+	 * @return the polarity bitset of a SAT model (must not be modified)
+	 */
+	public long[] getPolarity() {
+		return polarity;
+	}
+
+	/**
+	 * @return the values of a SMT or QBF model, values[code-1] being the value
+	 * of code (must not be modified)
+	 */
+	public double[] getValues() {
+		return values;
+	}
+
+	/**
+	 * @return the exact texts of the values of a SMT model (see
+	 * getValueText()), null if all the values are exact (must not be
+	 * modified)
+	 */
+	public String[] getValueTexts() {
+		return texts;
+	}
+
+	/**
+	 * @return the name of code as shown to the user
+	 */
+	public String getName(int code) {
+		String name = (symbols == null) ? null : symbols.getName(code);
+		return (name != null) ? name : Integer.toString(code).intern();
+	}
+
+	/**
+	 * @return true if the literal code is not shown to the user ('&45'
+	 * literals, issue #88)
+	 */
+	public boolean isHidden(int code) {
+		return symbols != null && symbols.isHidden(code);
+	}
+
+	/** The doubles are exact integers up to 2^53 */
+	private final static double MAX_EXACT_INTEGER = 9007199254740992.0;
+
+	/**
+	 * @return the value as it was given by the solver: 0, 1, 2.5 or ? (NaN)
+	 */
+	public static String formatValue(double value) {
+		if (Double.isNaN(value))
+			return "?";
+		if (value == Math.rint(value) && Math.abs(value) <= MAX_EXACT_INTEGER)
+			return Long.toString((long) value);
+		return Double.toString(value);
 	}
 
 	@Override
 	public String toString() {
 		// TODO Please write a proper toString
-		String out = "";
-		for (Literal s : literals) {
-			out = out + " ("+ s.getLiteral()+" "+((s.getArithmetic_value()==null)?s.isLiteral_positivity():s.getArithmetic_value())+") ";
+		StringBuilder out = new StringBuilder();
+		for (Literal s : this) {
+			out.append(" (").append(s.getLiteral()).append(" ")
+				.append((s.getArithmetic_value()==null)?s.isLiteral_positivity():s.getArithmetic_value())
+				.append(") ");
 		}
-		return out;
+		return out.toString();
 	}
 
+	/**
+	 * The literals are created on the fly, in the order of their codes; the
+	 * hidden literals are skipped.
+	 */
 	@Override
 	public Iterator<Literal> iterator() {
-		return literals.iterator();
-	}
+		return new Iterator<Literal>() {
+			private int next = nextVisible(1);
 
+			private int nextVisible(int code) {
+				while (code <= nbCodes && isHidden(code))
+					code++;
+				return code;
+			}
 
+			@Override
+			public boolean hasNext() {
+				return next <= nbCodes;
+			}
+
+			@Override
+			public Literal next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				int code = next;
+				next = nextVisible(code + 1);
+				if (polarity != null)
+					return new Literal(getName(code), isTrue(code));
+				return new Literal(getName(code), getValueText(code));
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("a model cannot be modified");
+			}
+		};
+	}
 }
@@ -0,0 +1,120 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package entity;
+
+import java.util.List;
+
+/**
+ * Set of models used for skipping the duplicate models (the models that
+ * only differ on hidden '&45' literals, issue #88). It replaces the
+ * LexicographicalTree, which needed one node per literal per model: here,
+ * each model only costs its 128-bit fingerprint (see Model.getFingerprint1())
+ * and its index in the list of models (the set does not keep the models
+ * themselves, which can have been spilled to disk by ModelStore).
+ *
+ * Two models with the same fingerprint are compared with equals() so that a
+ * collision cannot make a model disappear.
+ *
+ * @author Maël
+ */
+public class ModelSet {
+	private long[] fingerprints1 = new long[16];
+	private long[] fingerprints2 = new long[16];
+	/** Index (in models) + 1 of the model in each slot, 0 for an empty slot */
+	private int[] indexes = new int[16];
+	private int size = 0;
+	private final List<Model> models;
+
+	/**
+	 * @param models the list where the models of the set are (the models are
+	 * only read from it when two fingerprints are the same)
+	 */
+	public ModelSet(List<Model> models) {
+		this.models = models;
+	}
+
+	/**
+	 * @param m the model
+	 * @param index the index of m in the list of models
+	 * @return true if the model was not already in the set
+	 */
+	public boolean add(Model m, int index) {
+		int slot = find(m);
+		if (indexes[slot] != 0)
+			return false;
+		indexes[slot] = index + 1;
+		fingerprints1[slot] = m.getFingerprint1();
+		fingerprints2[slot] = m.getFingerprint2();
+		if (++size > indexes.length / 2)
+			grow();
+		return true;
+	}
+
+	public boolean contains(Model m) {
+		return indexes[find(m)] != 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Open addressing with linear probing.
+	 * @return the slot holding a model equal to m or the empty slot where m
+	 * should be put
+	 */
+	private int find(Model m) {
+		long f1 = m.getFingerprint1();
+		long f2 = m.getFingerprint2();
+		int mask = indexes.length - 1;
+		int slot = (int) (f1 ^ (f1 >>> 32)) & mask;
+		while (indexes[slot] != 0) {
+			if (fingerprints1[slot] == f1 && fingerprints2[slot] == f2
+					&& models.get(indexes[slot] - 1).equals(m))
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void grow() {
+		int[] oldIndexes = indexes;
+		long[] old1 = fingerprints1;
+		long[] old2 = fingerprints2;
+		indexes = new int[2 * oldIndexes.length];
+		fingerprints1 = new long[indexes.length];
+		fingerprints2 = new long[indexes.length];
+		int mask = indexes.length - 1;
+		for (int i = 0; i < oldIndexes.length; i++) {
+			if (oldIndexes[i] == 0)
+				continue;
+			int slot = (int) (old1[i] ^ (old1[i] >>> 32)) & mask;
+			while (indexes[slot] != 0)
+				slot = (slot + 1) & mask;
+			indexes[slot] = oldIndexes[i];
+			fingerprints1[slot] = old1[i];
+			fingerprints2[slot] = old2[i];
+		}
+	}
+}
@@ -0,0 +1,264 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package entity;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * The "literals map" ("table de correspondance") given by the translator:
+ * the name of each DIMACS variable, indexed by its code. It replaces the
+ * HashMap<Integer,String>: the names are kept in an array (no boxing, no
+ * hashing when decoding a model) and are interned (so that two Literal
+ * with the same name share the same String).
+ *
+ * The hidden literals ('&45' literals, issue #88) are known when the table
+ * is built: isHidden() is a bit test instead of a charAt(0) on each literal
+ * of each model.
+ *
+ * For very big problems, the names can be kept in a file mapped in memory
+ * (see writeTo() and map()) instead of the heap: only the hidden bitmask
+ * stays in memory and the names are decoded when asked for.
+ *
+ * @author Maël
+ */
+public class SymbolTable {
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+	private final static int MAGIC = 0x54535954; // "TSYT"
+
+	private String[] names;
+	private long[] hidden;
+	private int maxCode = 0;
+	private int size = 0;
+
+	/** Set when the names are read from a mapped file (names is null) */
+	private final MappedByteBuffer mapped;
+	private final int mappedDataStart;
+
+	public SymbolTable() {
+		this(16);
+	}
+
+	/**
+	 * @param maxCode the expected greatest code (the table grows if needed)
+	 */
+	public SymbolTable(int maxCode) {
+		this.names = new String[maxCode + 1];
+		this.hidden = new long[(maxCode >> 6) + 1];
+		this.mapped = null;
+		this.mappedDataStart = 0;
+	}
+
+	private SymbolTable(MappedByteBuffer mapped, int maxCode, int size,
+			long[] hidden) {
+		this.names = null;
+		this.mapped = mapped;
+		this.maxCode = maxCode;
+		this.size = size;
+		this.hidden = hidden;
+		// magic, maxCode, size, then maxCode + 2 offsets
+		this.mappedDataStart = 4 * (3 + maxCode + 2);
+	}
+
+	/**
+	 * Gives a name to a code. The table must not be modified once it has been
+	 * given to a Solver.
+	 * @param code the DIMACS code (> 0)
+	 * @param name the name of the literal
+	 */
+	public void put(int code, String name) {
+		if (names == null)
+			throw new UnsupportedOperationException("put(): the table is read-only (mapped file)");
+		if (code <= 0)
+			throw new IllegalArgumentException("put(): wrong code " + code);
+		if (code >= names.length)
+			names = Arrays.copyOf(names, Math.max(code + 1, 2 * names.length));
+		if ((code >> 6) >= hidden.length)
+			hidden = Arrays.copyOf(hidden, Math.max((code >> 6) + 1, 2 * hidden.length));
+		if (names[code] == null)
+			size++;
+		names[code] = name.intern();
+		if (name.charAt(0) == '&') // Tseitin literals (issue #88)
+			hidden[code >> 6] |= 1L << code;
+		else
+			hidden[code >> 6] &= ~(1L << code);
+		maxCode = Math.max(maxCode, code);
+	}
+
+	/**
+	 * @param code the DIMACS code
+	 * @return the name of the literal or null if this code has no name
+	 */
+	public String getName(int code) {
+		if (code <= 0 || code > maxCode)
+			return null;
+		if (names != null)
+			return names[code];
+		int start = mapped.getInt(4 * (3 + code));
+		int end = mapped.getInt(4 * (3 + code + 1));
+		if (start == end)
+			return null;
+		byte[] bytes = new byte[end - start];
+		ByteBuffer view = mapped.duplicate();
+		view.position(mappedDataStart + start);
+		view.get(bytes);
+		return new String(bytes, UTF8).intern();
+	}
+
+	/**
+	 * @return true if the literal is a Tseitin literal ('&45' literals,
+	 * issue #88) that should not be shown to the user
+	 */
+	public boolean isHidden(int code) {
+		return code > 0 && code <= maxCode && (hidden[code >> 6] & (1L << code)) != 0;
+	}
+
+	/**
+	 * @return the bits 64*word to 64*word+63 of the hidden bitmask (used by
+	 * Model for comparing the visible literals a word at a time)
+	 */
+	long getHiddenWord(int word) {
+		return (word < hidden.length) ? hidden[word] : 0;
+	}
+
+	/**
+	 * @return the greatest code that has a name
+	 */
+	public int getMaxCode() {
+		return maxCode;
+	}
+
+	/**
+	 * @return the number of codes that have a name
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if the two tables give the same names to the same codes
+	 * (e.g. the tables built for each model of an SMT problem)
+	 */
+	public boolean sameNames(SymbolTable other) {
+		if (other == this)
+			return true;
+		if (other == null || other.maxCode != maxCode || other.size != size)
+			return false;
+		for (int code = 1; code <= maxCode; code++) {
+			// The names are interned
+			if (getName(code) != other.getName(code))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return a hash of the names, equal for two tables that have the
+	 * sameNames()
+	 */
+	public int namesHashCode() {
+		int hash = maxCode;
+		for (int code = 1; code <= maxCode; code++) {
+			String name = getName(code);
+			hash = 31 * hash + (name == null ? 0 : name.hashCode());
+		}
+		return hash;
+	}
+
+	/**
+	 * @return a table holding the same names in the heap (useful for a small
+	 * table that has been mapped)
+	 */
+	public SymbolTable copyToHeap() {
+		SymbolTable copy = new SymbolTable(maxCode);
+		for (int code = 1; code <= maxCode; code++) {
+			String name = getName(code);
+			if (name != null)
+				copy.put(code, name);
+		}
+		return copy;
+	}
+
+	/**
+	 * Writes the table in the format read by map(): a header, the offset of
+	 * each name and the names encoded in UTF-8.
+	 */
+	public void writeTo(OutputStream stream) throws IOException {
+		byte[][] encoded = new byte[maxCode + 1][];
+		DataOutputStream out = new DataOutputStream(stream);
+		out.writeInt(MAGIC);
+		out.writeInt(maxCode);
+		out.writeInt(size);
+		int offset = 0;
+		for (int code = 0; code <= maxCode; code++) {
+			out.writeInt(offset);
+			String name = getName(code);
+			encoded[code] = (name == null) ? new byte[0] : name.getBytes(UTF8);
+			offset += encoded[code].length;
+		}
+		out.writeInt(offset);
+		for (byte[] name : encoded) {
+			out.write(name);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Maps a file written by writeTo() in memory. The names are not loaded:
+	 * they are decoded from the file by getName().
+	 * @throws IOException if the file cannot be read or is not a table
+	 */
+	public static SymbolTable map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			MappedByteBuffer buffer = raf.getChannel().map(
+					FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			if (raf.length() < 12 || buffer.getInt(0) != MAGIC)
+				throw new IOException("map(): '" + file + "' is not a symbol table");
+			int maxCode = buffer.getInt(4);
+			int size = buffer.getInt(8);
+			int dataStart = 4 * (3 + maxCode + 2);
+			long[] hidden = new long[(maxCode >> 6) + 1];
+			for (int code = 1; code <= maxCode; code++) {
+				int start = buffer.getInt(4 * (3 + code));
+				int end = buffer.getInt(4 * (3 + code + 1));
+				if (end > start && buffer.get(dataStart + start) == '&')
+					hidden[code >> 6] |= 1L << code;
+			}
+			return new SymbolTable(buffer, maxCode, size, hidden);
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("map(): '" + file + "' is truncated", e);
+		} finally {
+			raf.close(); // The mapping stays valid after the file is closed
+		}
+	}
+}
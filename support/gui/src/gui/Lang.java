@@ -114,6 +114,26 @@ public class Lang {
     public static final String RESULTS_MENUITEM_SAVEMODEL = "ResultsMenuBar.jMenuItemSaveModel.text";
     public static final String RESULTS_MENUITEM_HELPRESULTS = "ResultsMenuBar.jMenuItemHelpResults.text";
     public static final String RESULTS_FILE_CHOOSER = "ResultsPanel.jFileChooser.title";
+    public static final String RESULTS_MENUITEM_EXPORTALL = "ResultsMenuBar.jMenuItemExportAll.text";
+    public static final String RESULTS_EXPORTALL_CONTINUE = "ResultsPanel.exportAll.continue";
+    public static final String RESULTS_PIN_TRUE = "ResultsPanel.pin.true";
+    public static final String RESULTS_PIN_FALSE = "ResultsPanel.pin.false";
+    public static final String RESULTS_UNPIN = "ResultsPanel.pin.remove";
+    public static final String RESULTS_UNPIN_ALL = "ResultsPanel.pin.removeAll";
+    public static final String RESULTS_PIN_CONFLICT = "ResultsPanel.pin.conflict";
+    public static final String RESULTS_PIN_UNAVAILABLE = "ResultsPanel.pin.unavailable";
+    public static final String RESULTS_MENUITEM_COUNT = "ResultsMenuBar.jMenuItemCount.text";
+    public static final String RESULTS_COUNT_LIMIT = "ResultsPanel.count.limit";
+    public static final String RESULTS_COUNT_RESULT = "ResultsPanel.count.result";
+    public static final String RESULTS_COUNT_LIMIT_REACHED = "ResultsPanel.count.limitReached";
+    public static final String RESULTS_MENUITEM_ESTIMATE = "ResultsMenuBar.jMenuItemEstimate.text";
+    public static final String RESULTS_ESTIMATE_TOLERANCE = "ResultsPanel.estimate.tolerance";
+    public static final String RESULTS_ESTIMATE_CONFIDENCE = "ResultsPanel.estimate.confidence";
+    public static final String RESULTS_ESTIMATE_RESULT = "ResultsPanel.estimate.result";
+    public static final String RESULTS_ESTIMATE_INTERVAL = "ResultsPanel.estimate.interval";
+    public static final String RESULTS_MENUITEM_BACKBONE = "ResultsMenuBar.jMenuItemBackbone.text";
+    public static final String RESULTS_BACKBONE_RESULT = "ResultsPanel.backbone.result";
+    public static final String RESULTS_BACKBONE_EMPTY = "ResultsPanel.backbone.empty";
     public static final String SOLVER_SAT_NAME = "SAT";
     public static final String SOLVER_SAT_DESCRIPTION = "A basic solver.";
     public static final String ERROR_TRADUCTION = "ParentEditionPanel.jOptionPane1.traductionError";
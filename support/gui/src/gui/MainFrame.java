@@ -39,6 +39,7 @@ import javax.swing.JPanel;
 
 import solution.ModelList;
 import solution.Solver;
+import solution.SolverExecutionException;
 import translation.TranslatorSAT;
 
 /**
@@ -110,6 +111,15 @@ public class MainFrame extends javax.swing.JFrame {
     }
 
     public void setSolver(Solver solver) {
+        if (this.solver != null) {
+            // The models of the previous problem are not needed anymore
+            try {
+                ModelList previous = this.solver.getModelList();
+                if (previous != null)
+                    previous.close();
+            } catch (SolverExecutionException e) {
+            }
+        }
         this.solver = solver;
     }
 
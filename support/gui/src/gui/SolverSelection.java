@@ -15,6 +15,7 @@ public class SolverSelection {
 	private MainFrame m;
     public enum SolverType {
             SAT, 
+            SHARP_SAT, 
             QF_LRA, 
             QF_LIA, 
             QF_RDL, 
@@ -34,7 +35,7 @@ public class SolverSelection {
     
     public void setSelectedSolver(SolverType solverType) {
         this.selectedSolver = solverType;
-        if(selectedSolver == SolverType.SAT) {
+        if(selectedSolver == SolverType.SAT || selectedSolver == SolverType.SHARP_SAT) {
         	m.getEditorPanel1().getEditor().getEditorTextArea().setSyntaxEditingStyle("sat");
         } else if(selectedSolver == SolverType.QBF) {
         	m.getEditorPanel1().getEditor().getEditorTextArea().setSyntaxEditingStyle("qbf");
@@ -26,6 +26,7 @@ import org.scilab.forge.jlatexmath.TeXConstants;
 import org.scilab.forge.jlatexmath.TeXFormula;
 import org.scilab.forge.jlatexmath.TeXIcon;
 
+import touist.StreamPump;
 import translation.TranslationError;
 
 /**
@@ -33,6 +34,8 @@ import translation.TranslationError;
  * @author alexis
  */
 public class TranslationLatex {
+    /** Above this size, the formula would not be displayable anyway */
+    private final static int LATEX_MAX_CHARS = 16 << 20;
     
     // Result of touistl string translation to Latex 
     private String latexFormula = "";
@@ -92,7 +95,13 @@ public class TranslationLatex {
 		
         System.out.println("latexify(): cmd executed: "+cmd.toString());
 		
-        this.p = Runtime.getRuntime().exec(cmd.toArray(new String[0]));
+        this.p = touist.TouistProcessPool.getInstance().exec(cmd);
+
+        // Both streams are drained while touist is running: a big formula
+        // or many warnings would otherwise fill the pipes and block touist
+        StreamPump stdout = new StreamPump(p.getInputStream(), "touist-latex-stdout",
+                LATEX_MAX_CHARS);
+        StreamPump stderr = new StreamPump(p.getErrorStream(), "touist-latex-stderr");
 
         BufferedWriter toProcess = new BufferedWriter(new OutputStreamWriter(p.getOutputStream()));
         String s = "";
@@ -104,23 +113,12 @@ public class TranslationLatex {
 		
         int return_code = p.waitFor();
         
-		BufferedReader fromProcess = new BufferedReader(new InputStreamReader(p.getInputStream()));
-		String linesStdout = "";
-		while (fromProcess.ready())
-			linesStdout += fromProcess.readLine() + "\n";;
-
-		BufferedReader fromProcessErr = new BufferedReader(new InputStreamReader(
-				this.p.getErrorStream()));
-		String linesStdErr = "";
-		while (fromProcessErr.ready()) {
-			linesStdErr += fromProcessErr.readLine() + "\n";
-		}
-		fromProcessErr.close();
-		fromProcess.close();
+		String linesStdout = stdout.getContent();
+		String linesStdErr = stderr.getContent();
 
 		errors = TranslationError.parse(linesStdErr);
 		
-		if(return_code == 0) {
+		if(return_code == 0 && !stdout.isTruncated()) {
 			latexFormula = linesStdout;
 		}
 		return return_code == 0;
@@ -24,6 +24,7 @@
 package gui.editionView;
 
 import entity.Model;
+import entity.SymbolTable;
 import gui.AbstractComponentPanel;
 import gui.Lang;
 import gui.MainFrame;
@@ -48,11 +49,19 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 
 import org.kordamp.ikonli.fontawesome.FontAwesomeIkonHandler;
 import org.kordamp.ikonli.swing.FontIcon;
+import solution.ModelList;
+import solution.SAT4JSession;
 import solution.SolverExecutionException;
+import solution.SolverCubeAndConquer;
+import solution.SolverDDNNF;
+import solution.SolverDifferenceLogic;
+import solution.SolverPortfolio;
 import solution.SolverQBF;
+import solution.SolverSAT4J;
 import solution.SolverSMT;
 import solution.SolverTestSAT4J;
 import touist.TouIST;
+import translation.CNF;
 import translation.TranslationError;
 
 /**
@@ -65,9 +74,22 @@ public class ParentEditionPanel extends AbstractComponentPanel {
     private String jLabelErrorMessageText;
     private Thread testThread;
     private Path openedFile = null;
+    /**
+     * Keeps the SAT4J solver (and what it has learned) from one "Solve" to
+     * the next while the same document is edited
+     */
+    private SAT4JSession satSession = new SAT4JSession();
     final protected MainFrame mainframe;
 
 
+    /**
+     * @return the SAT4J session of the document being edited (used by the
+     * results view for solving again under pinned literals)
+     */
+    public SAT4JSession getSATSession() {
+        return satSession;
+    }
+
     public void setOpenedFile(Path file) {
         String windowTitle = mainframe.getLang().getWord(Lang.FRAME_TITLE) + " "
                 + System.getProperty("touist.version");
@@ -351,7 +373,8 @@ public class ParentEditionPanel extends AbstractComponentPanel {
 
                 Process p = null;
 
-                if (getFrame().getSolverSelection().getSelectedSolver() == SolverSelection.SolverType.SAT) {
+                if (getFrame().getSolverSelection().getSelectedSolver() == SolverSelection.SolverType.SAT
+                        || getFrame().getSolverSelection().getSelectedSolver() == SolverSelection.SolverType.SHARP_SAT) {
                     p = getFrame().getTranslatorSAT().getP();
                 }
 
@@ -494,6 +517,8 @@ public class ParentEditionPanel extends AbstractComponentPanel {
         try {
             editor.loadIntoTextEditor(file.toString());
             setOpenedFile(file);
+            // Nothing learned on the previous document is useful anymore
+            satSession = new SAT4JSession();
         } catch(Exception e) {
             System.err.println("Failed to load file: " + file.toString() + "\n" + e.getMessage());
             showErrorMessage(e,"Failed to load file: '" + file.toString() + "'\n" + e.toString(),"");
@@ -590,26 +615,16 @@ public class ParentEditionPanel extends AbstractComponentPanel {
         sinon passer à l'état SINGLE_RESULT
         Si aucun model n'existe alors passer a l'état NO_RESULT
         */
-        String path = touist.TouIST.checkPath(touist.TouIST.getWhereToSaveTemp() + File.separator + "temp.touist");
-        File touistFile = new File(path); //TODO se mettre d'accord sur un nom standard ou ajouter a Translator et BaseDeClause des méthode pour s'échange de objets File
         String errorMessage;
         
-        
-        try {
-            editor.saveToFile(touistFile.getAbsolutePath());
-        } catch (IOException ex) {
-            errorMessage = "Couldn't create file '" + touistFile.getAbsolutePath() + "':\n"+ex.getMessage()+"\nPath: "+path;
-            showErrorMessage(errorMessage, getFrame().getLang().getWord(Lang.ERROR_TRADUCTION));
-            return State.EDITION;
-        }
-        
         // Button "Solve" now displays "Translating...
         solveButton.setText("Translating");
 
         if (getFrame().getEditorPanel1().editor.getEditorTextArea().getSyntaxEditingStyle() == "sat") {
            
             try {
-            	boolean ok = getFrame().getTranslatorSAT().translate(touistFile.getAbsolutePath());
+            	// The document is given to the translator through its stdin
+            	boolean ok = getFrame().getTranslatorSAT().translate(new StringReader(editor.getText()));
             	errorMessage = "";
                 for (TranslationError error : getFrame().getTranslatorSAT().getErrors()) {
                         errorMessage += error + "\n";
@@ -624,8 +639,6 @@ public class ParentEditionPanel extends AbstractComponentPanel {
                 if(!ok) {
                     return State.EDITION;
                 }
-                File f = touistFile;
-                f.deleteOnExit();
             } catch (IOException ex) {
                 ex.printStackTrace();
                 errorMessage = "The translator returned an IOException: \n"+ex.getMessage()+"\n"+
@@ -639,10 +652,29 @@ public class ParentEditionPanel extends AbstractComponentPanel {
 
             solveButton.setText("Solving");
 
-            //Add CurrentPath/dimacsFile
-            String translatedFilePath = getFrame().getTranslatorSAT().getDimacsFilePath();
-            Map<Integer, String> literalsMap = getFrame().getTranslatorSAT().getLiteralsMap();
-            getFrame().setSolver(new SolverTestSAT4J(translatedFilePath, literalsMap));
+            CNF clauses = getFrame().getTranslatorSAT().getCNF();
+            SymbolTable literalsMap = getFrame().getTranslatorSAT().getSymbolTable();
+            // The minisat.jar subprocess is kept for debugging purpose only
+            if (getFrame().getSolverSelection().getSelectedSolver() == SolverType.SHARP_SAT) {
+                // The exact count is known as soon as the d-DNNF is compiled
+                getFrame().setSolver(new SolverDDNNF(clauses, literalsMap));
+            } else if (Boolean.getBoolean("touist.externalSatSolver")) {
+                getFrame().setSolver(new SolverTestSAT4J(clauses, literalsMap));
+            } else if (Boolean.getBoolean("touist.cubeAndConquer")) {
+                // The models are enumerated in parallel, one cube per task
+                getFrame().setSolver(new SolverCubeAndConquer(clauses, literalsMap,
+                        Runtime.getRuntime().availableProcessors()));
+            } else if (Integer.getInteger("touist.portfolio", 0) > 1
+                    && Runtime.getRuntime().availableProcessors() > 1) {
+                // Several SAT4J configurations race on the idle cores
+                getFrame().setSolver(new SolverPortfolio(clauses, literalsMap,
+                        Math.min(Integer.getInteger("touist.portfolio"),
+                                Runtime.getRuntime().availableProcessors())));
+            } else if ("false".equals(System.getProperty("touist.incrementalSat"))) {
+                getFrame().setSolver(new SolverSAT4J(clauses, literalsMap));
+            } else {
+                getFrame().setSolver(satSession.newSolver(clauses, literalsMap));
+            }
 
             try {
                 getFrame().getSolver().launch();
@@ -652,9 +684,10 @@ public class ParentEditionPanel extends AbstractComponentPanel {
                 showErrorMessage(ex, errorMessage, "Solver error");
                 return State.EDITION;
             } catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}    
+                // The compilation of the d-DNNF has been stopped
+                System.out.println("The solver has been stopped");
+                return State.EDITION;
+            }
 
             // Si il y a au moins un model
             try {
@@ -673,6 +706,9 @@ public class ParentEditionPanel extends AbstractComponentPanel {
                 if (iter.hasNext()) {
                     getFrame().setResultView(iter.next());
                     if (iter.hasNext()) {
+                        // The next models are computed while the user looks
+                        // at the first one
+                        getFrame().getSolver().getModelList().startPrefetching(ModelList.DEFAULT_PREFETCH);
                        //iter.previous();
                         return State.FIRST_RESULT;
                     } else {
@@ -707,7 +743,12 @@ public class ParentEditionPanel extends AbstractComponentPanel {
                 default :
             }
             BufferedReader reader = new BufferedReader(new StringReader(editor.getText()));
-            SolverSMT s = new SolverSMT(reader,logic);
+            // -Dtouist.inProcessDifferenceLogic=true solves the difference
+            // logics in-process (DPLL(T)); it shows the SMT-LIB names of the
+            // propositions (p_a_b_ instead of p(a,b)), so it is not the default
+            SolverSMT s = (SolverDifferenceLogic.supports(logic)
+                    && Boolean.getBoolean("touist.inProcessDifferenceLogic"))
+                    ? new SolverDifferenceLogic(reader,logic) : new SolverSMT(reader,logic);
             getFrame().setSolver(s);
             try {
                 s.launch();
@@ -737,22 +778,11 @@ public class ParentEditionPanel extends AbstractComponentPanel {
                     return State.EDITION;
                 }
                 getFrame().updateResultsPanelIterator(iter);
-                /**
-                 * Si il y a plus d'un model, alors passer à l'état FIRST_RESULT
-                 * sinon passer à l'état SINGLE_RESULT
-                 */
-                if (iter.hasNext()) {
-                    getFrame().setResultView(iter.next());
-                    if (iter.hasNext()) {
-                        //iter.previous();
-                        return State.FIRST_RESULT;
-                    } else {
-                        //iter.previous();
-                        return State.SINGLE_RESULT;
-                    }
-                } else {
-                    return State.SINGLE_RESULT;
-                }
+                getFrame().setResultView(iter.next());
+                // touist solves the whole problem again for each model: the
+                // next one is only looked for when Next is clicked (no
+                // prefetching), which also finds out if there is none
+                return State.FIRST_RESULT;
             } catch (IOException ex) {
                 ex.printStackTrace();
                 errorMessage = "The translator returned an IOException: \n"+ex.getMessage();
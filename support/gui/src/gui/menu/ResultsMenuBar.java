@@ -47,6 +47,10 @@ public class ResultsMenuBar extends JMenuBar {
     JMenuItem jMenuItemEnglish;
     JMenuItem jMenuItemFrench;
     JMenuItem jMenuItemSaveModel;
+    JMenuItem jMenuItemExportAll;
+    JMenuItem jMenuItemCount;
+    JMenuItem jMenuItemEstimate;
+    JMenuItem jMenuItemBackbone;
     JMenuItem jMenuItemHelpResults;
     
     
@@ -61,6 +65,10 @@ public class ResultsMenuBar extends JMenuBar {
         jMenuItemFrench = new JMenuItem("French");
         jMenuItemSaveModel = new JMenuItem();
         jMenuItemSaveModel.setAccelerator(KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_S, java.awt.Event.META_MASK));
+        jMenuItemExportAll = new JMenuItem();
+        jMenuItemCount = new JMenuItem();
+        jMenuItemEstimate = new JMenuItem();
+        jMenuItemBackbone = new JMenuItem();
         jMenuItemHelpResults = new JMenuItem();
         
         jMenuItemEnglish.addActionListener(new java.awt.event.ActionListener() {
@@ -81,6 +89,30 @@ public class ResultsMenuBar extends JMenuBar {
             }
         });
         
+        jMenuItemExportAll.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                jMenuItemExportAllActionPerformed(evt);
+            }
+        });
+        
+        jMenuItemCount.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                jMenuItemCountActionPerformed(evt);
+            }
+        });
+        
+        jMenuItemEstimate.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                jMenuItemEstimateActionPerformed(evt);
+            }
+        });
+        
+        jMenuItemBackbone.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                jMenuItemBackboneActionPerformed(evt);
+            }
+        });
+        
         jMenuItemHelpResults.addActionListener(new java.awt.event.ActionListener() {
             public void actionPerformed(java.awt.event.ActionEvent evt) {
                 jMenuItemHelpResultsActionPerformed(evt);
@@ -88,6 +120,10 @@ public class ResultsMenuBar extends JMenuBar {
         });
         
         jMenuFile.add(jMenuItemSaveModel);
+        jMenuFile.add(jMenuItemExportAll);
+        jMenuFile.add(jMenuItemCount);
+        jMenuFile.add(jMenuItemEstimate);
+        jMenuFile.add(jMenuItemBackbone);
         jMenuLanguage.add(jMenuItemFrench);
         jMenuLanguage.add(jMenuItemEnglish);
         jMenuHelp.add(jMenuItemHelpResults);
@@ -121,6 +157,22 @@ public class ResultsMenuBar extends JMenuBar {
         }
     }
     
+    private void jMenuItemExportAllActionPerformed(java.awt.event.ActionEvent evt) {
+        parent.getResultsPanel1().exportAllModels();
+    }
+    
+    private void jMenuItemCountActionPerformed(java.awt.event.ActionEvent evt) {
+        parent.getResultsPanel1().countModels();
+    }
+    
+    private void jMenuItemEstimateActionPerformed(java.awt.event.ActionEvent evt) {
+        parent.getResultsPanel1().estimateModelCount();
+    }
+    
+    private void jMenuItemBackboneActionPerformed(java.awt.event.ActionEvent evt) {
+        parent.getResultsPanel1().findBackbone();
+    }
+    
     private void jMenuItemHelpResultsActionPerformed(java.awt.event.ActionEvent evt) {  
         
     }
@@ -130,6 +182,10 @@ public class ResultsMenuBar extends JMenuBar {
         this.jMenuHelp.setText(parent.getLang().getWord(Lang.RESULTS_MENU_HELP));
         this.jMenuLanguage.setText(parent.getLang().getWord(Lang.RESULTS_MENU_LANGUAGE));
         this.jMenuItemSaveModel.setText(parent.getLang().getWord(Lang.RESULTS_MENUITEM_SAVEMODEL));
+        this.jMenuItemExportAll.setText(parent.getLang().getWord(Lang.RESULTS_MENUITEM_EXPORTALL));
+        this.jMenuItemCount.setText(parent.getLang().getWord(Lang.RESULTS_MENUITEM_COUNT));
+        this.jMenuItemEstimate.setText(parent.getLang().getWord(Lang.RESULTS_MENUITEM_ESTIMATE));
+        this.jMenuItemBackbone.setText(parent.getLang().getWord(Lang.RESULTS_MENUITEM_BACKBONE));
         this.jMenuItemHelpResults.setText(parent.getLang().getWord(Lang.RESULTS_MENUITEM_HELPRESULTS));
     }
     
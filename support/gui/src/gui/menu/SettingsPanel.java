@@ -42,6 +42,7 @@ public class SettingsPanel extends AbstractComponentPanel {
         
         switch(parent.getSolverSelection().getSelectedSolver()) {
             case SAT : 
+            case SHARP_SAT : 
                 SAT4J.setSelected(true);
                 break;
             case QF_LRA : 
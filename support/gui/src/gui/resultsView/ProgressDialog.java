@@ -0,0 +1,143 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package gui.resultsView;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.UIManager;
+
+/**
+ * Modal dialog shown while a SwingWorker runs (export, count, estimate,
+ * backbone): an indeterminate progress bar, a note (e.g. the number of
+ * models so far) and a Cancel button. The worker must call close() in its
+ * done().
+ *
+ * @author Maël
+ */
+public class ProgressDialog extends JDialog {
+    private static final long serialVersionUID = 1L;
+
+    private final JLabel note;
+    private final JButton cancelButton;
+    private volatile boolean canceled = false;
+    private Runnable cancelAction = null;
+
+    /**
+     * @param parent the dialog is centered on its window
+     * @param title
+     * @param note the first note (can be empty)
+     */
+    public ProgressDialog(Component parent, String title, String note) {
+        super(SwingUtilities.getWindowAncestor(parent), title, ModalityType.APPLICATION_MODAL);
+        this.note = new JLabel(note.isEmpty() ? " " : note);
+        JProgressBar bar = new JProgressBar();
+        bar.setIndeterminate(true);
+        cancelButton = new JButton(UIManager.getString("OptionPane.cancelButtonText"));
+        cancelButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                cancel();
+            }
+        });
+        setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                cancel();
+            }
+        });
+
+        JPanel content = new JPanel(new BorderLayout(0, 8));
+        content.setBorder(BorderFactory.createEmptyBorder(12, 12, 12, 12));
+        content.add(this.note, BorderLayout.NORTH);
+        content.add(bar, BorderLayout.CENTER);
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 0, 0));
+        buttons.add(cancelButton);
+        content.add(buttons, BorderLayout.SOUTH);
+        setContentPane(content);
+        pack();
+        setSize(Math.max(getWidth(), 360), getHeight());
+        setLocationRelativeTo(parent);
+    }
+
+    /**
+     * @param action run (in the event dispatch thread) when the user cancels
+     */
+    public void setCancelAction(Runnable action) {
+        this.cancelAction = action;
+    }
+
+    public void setNote(String text) {
+        note.setText(text);
+    }
+
+    /**
+     * @return true if the user has clicked on Cancel or closed the dialog
+     */
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * Shows the dialog until close() is called, unless the worker is already
+     * done. Must be called (in the event dispatch thread) after
+     * worker.execute(): the events, and thus the worker's done(), are
+     * processed while the dialog is shown.
+     */
+    public void showWhileRunning(SwingWorker<?, ?> worker) {
+        if (!worker.isDone())
+            setVisible(true);
+    }
+
+    /**
+     * Hides the dialog; to be called by the done() of the worker.
+     */
+    public void close() {
+        setVisible(false);
+        dispose();
+    }
+
+    private void cancel() {
+        if (canceled)
+            return;
+        canceled = true;
+        cancelButton.setEnabled(false);
+        if (cancelAction != null)
+            cancelAction.run();
+    }
+}
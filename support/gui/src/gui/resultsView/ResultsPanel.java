@@ -31,17 +31,32 @@ import gui.State;
 
 import java.awt.Color;
 import java.awt.Component;
+import java.awt.Cursor;
+import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
 import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JPopupMenu;
+import javax.swing.JTextField;
+import javax.swing.SwingWorker;
 import javax.swing.JTable;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
@@ -49,6 +64,16 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.DefaultTableModel;
 
+import solution.ApproximateCounter;
+import solution.BackboneFinder;
+import solution.ModelCounter;
+import solution.ModelExporter;
+import solution.ModelList;
+import solution.SAT4JSession;
+import solution.SolverDDNNF;
+import solution.SolverExecutionException;
+import solution.SolverSMT;
+
 /**
  *
  * @author Skander
@@ -77,6 +102,16 @@ public class ResultsPanel extends AbstractComponentPanel {
         @Override
         public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
             Component composant =  super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+            // The pinned literals are in bold
+            if (pins.containsKey(table.getValueAt(row, 0))) {
+                composant.setFont(composant.getFont().deriveFont(Font.BOLD));
+            }
+            // The literals of the backbone are in green (always true) or red
+            // (always false)
+            Boolean fixed = backbone.get(table.getValueAt(row, 0));
+            if (fixed != null && !isSelected) {
+                composant.setForeground(fixed ? new Color(0,128,0) : new Color(192,0,0));
+            }
             if(row%2 == 0){
                 composant.setBackground(Color.WHITE);
             }
@@ -102,6 +137,11 @@ public class ResultsPanel extends AbstractComponentPanel {
     ListIterator<Model> iter;
     Model actModel;
     ExportDialog exportDialog;
+    /** The literals pinned to true or false (see solveWithPins()) */
+    private final Map<String, Boolean> pins = new LinkedHashMap<String, Boolean>();
+    /** The literals that have the same value in every model (see findBackbone()) */
+    private final Map<String, Boolean> backbone = new LinkedHashMap<String, Boolean>();
+    private JPopupMenu pinMenu;
 
     public void setShowOthersCheckbox(boolean b) {
         showOtherLiterals.setEnabled(b);
@@ -114,6 +154,144 @@ public class ResultsPanel extends AbstractComponentPanel {
         exportDialog = new ExportDialog();
         initComponents();
         literalsTable.setCellSelectionEnabled(true);
+        initPinMenu();
+    }
+
+    /**
+     * Right-clicking a literal of the table pins it to true or false: the
+     * problem is solved again with these values (see solveWithPins()).
+     */
+    private void initPinMenu() {
+        pinMenu = new JPopupMenu();
+        final JMenuItem pinTrue = new JMenuItem();
+        final JMenuItem pinFalse = new JMenuItem();
+        final JMenuItem unpin = new JMenuItem();
+        final JMenuItem unpinAll = new JMenuItem();
+        ActionListener listener = new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                int row = literalsTable.getSelectedRow();
+                String name = (row >= 0) ? (String) literalsTable.getValueAt(row, 0) : null;
+                Map<String, Boolean> previous = new LinkedHashMap<String, Boolean>(pins);
+                if (e.getSource() == unpinAll) {
+                    pins.clear();
+                } else if (name == null) {
+                    return;
+                } else if (e.getSource() == unpin) {
+                    pins.remove(name);
+                } else {
+                    pins.put(name, e.getSource() == pinTrue);
+                }
+                solveWithPins(previous);
+            }
+        };
+        for (JMenuItem item : new JMenuItem[] {pinTrue, pinFalse, unpin, unpinAll}) {
+            item.addActionListener(listener);
+            pinMenu.add(item);
+        }
+        literalsTable.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                showPinMenu(e);
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                showPinMenu(e);
+            }
+
+            private void showPinMenu(MouseEvent e) {
+                if (!e.isPopupTrigger() || !literalsTable.isEnabled())
+                    return;
+                int row = literalsTable.rowAtPoint(e.getPoint());
+                if (row >= 0)
+                    literalsTable.changeSelection(row, 0, false, false);
+                String name = (row >= 0) ? (String) literalsTable.getValueAt(row, 0) : null;
+                pinTrue.setText(getFrame().getLang().getWord(Lang.RESULTS_PIN_TRUE));
+                pinFalse.setText(getFrame().getLang().getWord(Lang.RESULTS_PIN_FALSE));
+                unpin.setText(getFrame().getLang().getWord(Lang.RESULTS_UNPIN));
+                unpinAll.setText(getFrame().getLang().getWord(Lang.RESULTS_UNPIN_ALL));
+                pinTrue.setEnabled(name != null && !Boolean.TRUE.equals(pins.get(name)));
+                pinFalse.setEnabled(name != null && !Boolean.FALSE.equals(pins.get(name)));
+                unpin.setEnabled(name != null && pins.containsKey(name));
+                unpinAll.setEnabled(!pins.isEmpty());
+                pinMenu.show(literalsTable, e.getX(), e.getY());
+            }
+        });
+    }
+
+    /**
+     * What-if solving: solves the problem again, in background, with the
+     * pinned literals as assumptions of the SAT4J session (nothing is
+     * translated again) and shows the first model. If there is no model, the
+     * pins that are in conflict are shown and the previous pins are put back.
+     * @param previous the pins before the last change
+     */
+    private void solveWithPins(final Map<String, Boolean> previous) {
+        // The backbone of the previous pins may not be the backbone anymore
+        backbone.clear();
+        if (!(getFrame().getSolver() instanceof SAT4JSession.SessionSolver)) {
+            pins.clear();
+            JOptionPane.showMessageDialog(this, getFrame().getLang().getWord(Lang.RESULTS_PIN_UNAVAILABLE));
+            return;
+        }
+        final SAT4JSession.SessionSolver solver = getFrame().getEditorPanel1()
+                .getSATSession().newSolver(pins);
+        literalsTable.setEnabled(false);
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        final SwingWorker<ListIterator<Model>, Void> worker = new SwingWorker<ListIterator<Model>, Void>() {
+            @Override
+            protected ListIterator<Model> doInBackground() throws Exception {
+                solver.launch();
+                ListIterator<Model> it = solver.getModelList().iterator();
+                return it.hasNext() ? it : null;
+            }
+
+            @Override
+            protected void done() {
+                literalsTable.setEnabled(true);
+                setCursor(Cursor.getDefaultCursor());
+                ListIterator<Model> it;
+                try {
+                    it = get();
+                } catch (Exception e) {
+                    JOptionPane.showMessageDialog(ResultsPanel.this, e.getMessage(),
+                            "Solver error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                if (it == null) {
+                    Map<String, Boolean> conflicting = solver.getConflictingPins();
+                    String message = getFrame().getLang().getWord(Lang.RESULTS_PIN_CONFLICT);
+                    for (Map.Entry<String, Boolean> pin : (conflicting != null ? conflicting : pins).entrySet()) {
+                        message += "\n" + pin.getKey() + " = " + pin.getValue();
+                    }
+                    JOptionPane.showMessageDialog(ResultsPanel.this, message,
+                            "Solver error", JOptionPane.ERROR_MESSAGE);
+                    pins.clear();
+                    pins.putAll(previous);
+                    // The previous pins gave a model: it is shown again
+                    if (!solver.getPins().equals(previous))
+                        solveWithPins(previous);
+                    return;
+                }
+                getFrame().setSolver(solver);
+                updateIterator(it);
+                setActModel(it.next());
+                setResult();
+                if (it.hasNext()) {
+                    setState(State.FIRST_RESULT);
+                    try {
+                        solver.getModelList().startPrefetching(ModelList.DEFAULT_PREFETCH);
+                    } catch (SolverExecutionException e) {
+                    }
+                } else {
+                    setState(State.SINGLE_RESULT);
+                }
+                applyRestrictions();
+                updateUI();
+            }
+        };
+        worker.execute();
     }
 
     /**
@@ -153,23 +331,22 @@ public class ResultsPanel extends AbstractComponentPanel {
         
         ResultTableModel model = (ResultTableModel) literalsTable.getModel();
         model.setNumRows(0);
-        ArrayList<Literal> literals = (ArrayList<Literal>) actModel.literals;
-        for(int i = 0; i < literals.size(); i++) {
-            String name = literals.get(i).getLiteral();
+        for(Literal literal : actModel) {
+            String name = literal.getLiteral();
             if (useRegex && !pattern.matcher(name).find()) {
                 continue;
             }
 
             // Case 1. Literal values are stored as booleans
-            if (literals.get(i).getArithmetic_value()==null){
-                boolean value = literals.get(i).isLiteral_positivity();
+            if (literal.getArithmetic_value()==null){
+                boolean value = literal.isLiteral_positivity();
                 if (falseLiterals && (value == false)) model.addRow(new String[]{name, falseText});
                 else if (trueLiterals && (value == true)) model.addRow(new String[]{name, trueText});
             }
 
             // Case 2. Literal values are stored as strings
             else {
-                String value = literals.get(i).getArithmetic_value();
+                String value = literal.getArithmetic_value();
                 if (value.equals("0")) {
                     if (falseLiterals) model.addRow(new String[]{name, falseText});
                 }
@@ -210,10 +387,9 @@ public class ResultsPanel extends AbstractComponentPanel {
                 String suffix = exportDialog.getSuffixValue();
                 
                 
-                ArrayList<Literal> literals = (ArrayList<Literal>) actModel.literals;
-                for(int i = 0; i < literals.size(); i++) {
-                    String left = exportDialog.getLeftValue()=="litteral"?literals.get(i).getLiteral():(literals.get(i).isLiteral_positivity()?trueText:falseText);
-                    String right = exportDialog.getRightValue()=="litteral"?literals.get(i).getLiteral():(literals.get(i).isLiteral_positivity()?trueText:falseText);
+                for(Literal literal : actModel) {
+                    String left = exportDialog.getLeftValue()=="litteral"?literal.getLiteral():(literal.isLiteral_positivity()?trueText:falseText);
+                    String right = exportDialog.getRightValue()=="litteral"?literal.getLiteral():(literal.isLiteral_positivity()?trueText:falseText);
                     sb.append(prefix+left+separator+right+suffix+"\n");
                 }
 
@@ -225,6 +401,309 @@ public class ResultsPanel extends AbstractComponentPanel {
         }
     }
 
+    /**
+     * Exports every model (not only the current one) in CSV, JSON Lines or
+     * binary (see ModelExporter). The models are written in background while
+     * a progress dialog shows how many models have been written; the export
+     * can be cancelled from this dialog.
+     */
+    public void exportAllModels() {
+        final ModelList models;
+        try {
+            models = getFrame().getSolver().getModelList();
+        } catch (SolverExecutionException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Export failure", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        final JFileChooser fc = new JFileChooser(new File(System.getProperty("user.dir")));
+        FileNameExtensionFilter csv = new FileNameExtensionFilter("CSV (csv)", "csv");
+        FileNameExtensionFilter jsonl = new FileNameExtensionFilter("JSON Lines (jsonl)", "jsonl");
+        FileNameExtensionFilter bin = new FileNameExtensionFilter("Binary (bin)", "bin");
+        fc.setFileFilter(csv);
+        fc.addChoosableFileFilter(jsonl);
+        fc.addChoosableFileFilter(bin);
+        fc.setAcceptAllFileFilterUsed(false);
+        if (fc.showDialog(this, getFrame().getLang().getWord(Lang.RESULTS_FILE_CHOOSER)) != JFileChooser.APPROVE_OPTION)
+            return;
+        final ModelExporter.Format format = (fc.getFileFilter() == jsonl) ? ModelExporter.Format.JSONL
+                : (fc.getFileFilter() == bin) ? ModelExporter.Format.BINARY
+                : ModelExporter.Format.CSV;
+        String path = fc.getSelectedFile().getAbsolutePath();
+        String extension = "." + ((FileNameExtensionFilter) fc.getFileFilter()).getExtensions()[0];
+        final String fileName = path.endsWith(extension) ? path : path + extension;
+
+        int answer = JOptionPane.showConfirmDialog(this,
+                getFrame().getLang().getWord(Lang.RESULTS_EXPORTALL_CONTINUE),
+                getFrame().getLang().getWord(Lang.RESULTS_MENUITEM_EXPORTALL),
+                JOptionPane.YES_NO_CANCEL_OPTION);
+        if (answer == JOptionPane.CANCEL_OPTION || answer == JOptionPane.CLOSED_OPTION)
+            return;
+        final boolean continueEnumerating = (answer == JOptionPane.YES_OPTION);
+
+        final ProgressDialog progress = new ProgressDialog(this,
+                getFrame().getLang().getWord(Lang.RESULTS_MENUITEM_EXPORTALL), fileName);
+        final SwingWorker<Long, Long> worker = new SwingWorker<Long, Long>() {
+            @Override
+            protected Long doInBackground() throws IOException {
+                return models.exportTo(fileName, format, continueEnumerating,
+                        new ModelExporter.ProgressListener() {
+                    @Override
+                    public void progress(long modelsWritten) {
+                        publish(modelsWritten);
+                    }
+                });
+            }
+
+            @Override
+            protected void process(java.util.List<Long> chunks) {
+                progress.setNote(fileName + ": " + chunks.get(chunks.size() - 1) + " models");
+            }
+
+            @Override
+            protected void done() {
+                progress.close();
+                if (isCancelled())
+                    return;
+                try {
+                    get();
+                } catch (Exception e) {
+                    JOptionPane.showMessageDialog(ResultsPanel.this, "Error during export: " + e.getMessage(),
+                            "Export failure", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        progress.setCancelAction(new Runnable() {
+            @Override
+            public void run() {
+                worker.cancel(true); // Interrupts the export
+            }
+        });
+        worker.execute();
+        progress.showWhileRunning(worker);
+    }
+
+    /**
+     * Counts the models without showing or keeping them (see ModelCounter),
+     * up to an optional limit. The models are counted in background while a
+     * progress dialog shows how many models have been counted so far; the
+     * counting can be cancelled from this dialog.
+     */
+    public void countModels() {
+        if (getFrame().getSolver() instanceof SolverDDNNF) {
+            // Already counted when the d-DNNF has been compiled
+            JOptionPane.showMessageDialog(this, getFrame().getLang().getWord(Lang.RESULTS_COUNT_RESULT)
+                    + " " + ((SolverDDNNF) getFrame().getSolver()).getExactCount(),
+                    getFrame().getLang().getWord(Lang.RESULTS_MENUITEM_COUNT),
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        final ModelCounter counter;
+        try {
+            counter = getFrame().getSolver().getModelCounter();
+        } catch (SolverExecutionException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Count failure", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        String answer = JOptionPane.showInputDialog(this,
+                getFrame().getLang().getWord(Lang.RESULTS_COUNT_LIMIT), "0");
+        if (answer == null)
+            return;
+        final long limit;
+        try {
+            limit = Math.max(0, Long.parseLong(answer.trim()));
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "'" + answer + "' is not a number", "Count failure", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        final ProgressDialog progress = new ProgressDialog(this,
+                getFrame().getLang().getWord(Lang.RESULTS_MENUITEM_COUNT), "0 models");
+        final SwingWorker<Long, Long> worker = new SwingWorker<Long, Long>() {
+            @Override
+            protected Long doInBackground() throws IOException, SolverExecutionException {
+                return counter.count(limit, getFrame().getSolver().getModelTimeout(),
+                        new ModelCounter.ProgressListener() {
+                    @Override
+                    public void progress(long modelsCounted) {
+                        publish(modelsCounted);
+                    }
+                });
+            }
+
+            @Override
+            protected void process(java.util.List<Long> chunks) {
+                progress.setNote(chunks.get(chunks.size() - 1) + " models");
+            }
+
+            @Override
+            protected void done() {
+                progress.close();
+                long count;
+                try {
+                    count = get();
+                } catch (Exception e) {
+                    if (!progress.isCanceled())
+                        JOptionPane.showMessageDialog(ResultsPanel.this, "Error during count: " + e.getMessage(),
+                                "Count failure", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                String message = getFrame().getLang().getWord(counter.isComplete()
+                        ? Lang.RESULTS_COUNT_RESULT : Lang.RESULTS_COUNT_LIMIT_REACHED);
+                JOptionPane.showMessageDialog(ResultsPanel.this, message + " " + count,
+                        getFrame().getLang().getWord(Lang.RESULTS_MENUITEM_COUNT),
+                        JOptionPane.INFORMATION_MESSAGE);
+            }
+        };
+        progress.setCancelAction(new Runnable() {
+            @Override
+            public void run() {
+                counter.cancel();
+            }
+        });
+        worker.execute();
+        progress.showWhileRunning(worker);
+    }
+
+    /**
+     * Estimates the number of models when there are too many models to count
+     * them (see ApproximateCounter). The user gives the tolerance and the
+     * confidence; the estimate and its confidence interval are shown once all
+     * the rounds are done. The estimation can be cancelled from the progress
+     * dialog.
+     */
+    public void estimateModelCount() {
+        final ModelCounter counter;
+        try {
+            counter = getFrame().getSolver().getModelCounter();
+        } catch (SolverExecutionException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Estimate failure", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        JTextField toleranceField = new JTextField("0.8");
+        JTextField confidenceField = new JTextField("0.8");
+        JPanel panel = new JPanel(new java.awt.GridLayout(4, 1));
+        panel.add(new JLabel(getFrame().getLang().getWord(Lang.RESULTS_ESTIMATE_TOLERANCE)));
+        panel.add(toleranceField);
+        panel.add(new JLabel(getFrame().getLang().getWord(Lang.RESULTS_ESTIMATE_CONFIDENCE)));
+        panel.add(confidenceField);
+        if (JOptionPane.showConfirmDialog(this, panel, getFrame().getLang().getWord(Lang.RESULTS_MENUITEM_ESTIMATE),
+                JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION)
+            return;
+        final double epsilon;
+        final double delta;
+        try {
+            epsilon = Double.parseDouble(toleranceField.getText().trim());
+            delta = 1 - Double.parseDouble(confidenceField.getText().trim());
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Estimate failure", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (epsilon <= 0 || delta <= 0 || delta >= 1) {
+            JOptionPane.showMessageDialog(this, "The tolerance must be positive and the confidence between 0 and 1",
+                    "Estimate failure", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        final ProgressDialog progress = new ProgressDialog(this,
+                getFrame().getLang().getWord(Lang.RESULTS_MENUITEM_ESTIMATE), "");
+        final SwingWorker<ApproximateCounter.Estimate, Void> worker = new SwingWorker<ApproximateCounter.Estimate, Void>() {
+            @Override
+            protected ApproximateCounter.Estimate doInBackground() throws IOException, SolverExecutionException {
+                return counter.estimate(epsilon, delta, getFrame().getSolver().getModelTimeout());
+            }
+
+            @Override
+            protected void done() {
+                progress.close();
+                ApproximateCounter.Estimate estimate;
+                try {
+                    estimate = get();
+                } catch (Exception e) {
+                    if (!progress.isCanceled())
+                        JOptionPane.showMessageDialog(ResultsPanel.this, "Error during estimate: " + e.getMessage(),
+                                "Estimate failure", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                String message = getFrame().getLang().getWord(estimate.isExact()
+                        ? Lang.RESULTS_COUNT_RESULT : Lang.RESULTS_ESTIMATE_RESULT) + " " + estimate.getEstimate();
+                if (!estimate.isExact()) {
+                    message += "\n" + MessageFormat.format(getFrame().getLang().getWord(Lang.RESULTS_ESTIMATE_INTERVAL),
+                            Long.toString(Math.round(estimate.getConfidence() * 100)),
+                            estimate.getLower().toString(), estimate.getUpper().toString());
+                }
+                JOptionPane.showMessageDialog(ResultsPanel.this, message,
+                        getFrame().getLang().getWord(Lang.RESULTS_MENUITEM_ESTIMATE),
+                        JOptionPane.INFORMATION_MESSAGE);
+            }
+        };
+        progress.setCancelAction(new Runnable() {
+            @Override
+            public void run() {
+                counter.cancel();
+            }
+        });
+        worker.execute();
+        progress.showWhileRunning(worker);
+    }
+
+    /**
+     * Finds the literals that have the same value in every model (the
+     * backbone) without enumerating the models, in background (see
+     * BackboneFinder): they are then shown in green (always true) or red
+     * (always false) in the table. The search can be cancelled from the
+     * progress dialog.
+     */
+    public void findBackbone() {
+        final BackboneFinder finder;
+        try {
+            finder = getFrame().getSolver().getBackboneFinder();
+        } catch (SolverExecutionException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Backbone failure", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        final ProgressDialog progress = new ProgressDialog(this,
+                getFrame().getLang().getWord(Lang.RESULTS_MENUITEM_BACKBONE), "");
+        final SwingWorker<Map<String, Boolean>, Void> worker = new SwingWorker<Map<String, Boolean>, Void>() {
+            @Override
+            protected Map<String, Boolean> doInBackground() throws IOException, SolverExecutionException {
+                return finder.find(getFrame().getSolver().getModelTimeout());
+            }
+
+            @Override
+            protected void done() {
+                progress.close();
+                Map<String, Boolean> found;
+                try {
+                    found = get();
+                } catch (Exception e) {
+                    if (!progress.isCanceled())
+                        JOptionPane.showMessageDialog(ResultsPanel.this, "Error during backbone search: " + e.getMessage(),
+                                "Backbone failure", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                backbone.clear();
+                if (found != null)
+                    backbone.putAll(found);
+                literalsTable.repaint();
+                String message = backbone.isEmpty()
+                        ? getFrame().getLang().getWord(Lang.RESULTS_BACKBONE_EMPTY)
+                        : MessageFormat.format(getFrame().getLang().getWord(Lang.RESULTS_BACKBONE_RESULT),
+                                Integer.toString(backbone.size()));
+                JOptionPane.showMessageDialog(ResultsPanel.this, message,
+                        getFrame().getLang().getWord(Lang.RESULTS_MENUITEM_BACKBONE),
+                        JOptionPane.INFORMATION_MESSAGE);
+            }
+        };
+        progress.setCancelAction(new Runnable() {
+            @Override
+            public void run() {
+                finder.cancel();
+            }
+        });
+        worker.execute();
+        progress.showWhileRunning(worker);
+    }
+
     /**
      * Enable the next and previous buttons depending on the frame state.
      */
@@ -406,6 +885,14 @@ public class ResultsPanel extends AbstractComponentPanel {
     }// </editor-fold>//GEN-END:initComponents
 
     private void backToEditorActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_backToEditorActionPerformed
+        // The models are not needed in advance anymore
+        try {
+            getFrame().getSolver().getModelList().stopPrefetching();
+        } catch (SolverExecutionException e) {
+        }
+        // The pins and the backbone only apply to the problem that has been solved
+        pins.clear();
+        backbone.clear();
         switch(getState()) {
             case EDITION :
                 // impossible
@@ -501,8 +988,17 @@ public class ResultsPanel extends AbstractComponentPanel {
         sinon on passe en INTER_RESULT
     */
     private State nextButtonHandler() {
+        if (!iter.hasNext()) {
+            // SolverSMT: the end of the models is only found out here
+            return iter.hasPrevious() ? State.LAST_RESULT : State.SINGLE_RESULT;
+        }
         this.setActModel(iter.next());
         this.setResult();
+        if (getFrame().getSolver() instanceof SolverSMT) {
+            // touist solves the whole problem again for each model: the next
+            // one is only looked for when Next is clicked
+            return State.MIDDLE_RESULT;
+        }
         
         if (iter.hasNext()){
             return State.MIDDLE_RESULT;
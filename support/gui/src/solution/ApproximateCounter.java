@@ -0,0 +1,426 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package solution;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.TimeoutException;
+
+import entity.SymbolTable;
+import translation.CNF;
+
+/**
+ * Approximate model counting by hashing (the ApproxMC algorithm of
+ * Chakraborty, Meel and Vardi). Random XOR constraints over the visible
+ * literals cut the models into cells of about the same size; the models of
+ * one cell are counted up to a threshold (bounded SAT calls) and multiplied
+ * by the number of cells. The median of several independent rounds is
+ * within a factor 1+epsilon of the number of models with a probability of at
+ * least 1-delta.
+ *
+ * The hidden literals ('&45' literals, issue #88) are projected out as in the
+ * ModelList: the XOR and blocking clauses only contain visible literals. The
+ * rounds are independent and run on a pool of threads, each one with its own
+ * SAT4J solver.
+ *
+ * @author Maël
+ */
+public class ApproximateCounter {
+
+	/**
+	 * The estimate and its confidence interval: the number of models is in
+	 * [lower, upper] with a probability of at least confidence.
+	 */
+	public static class Estimate {
+		private final BigInteger estimate;
+		private final BigInteger lower;
+		private final BigInteger upper;
+		private final double confidence;
+		private final boolean exact;
+
+		Estimate(BigInteger estimate, double epsilon, double confidence, boolean exact) {
+			this.estimate = estimate;
+			this.confidence = exact ? 1 : confidence;
+			this.exact = exact;
+			if (exact) {
+				lower = upper = estimate;
+			} else {
+				BigDecimal e = new BigDecimal(estimate);
+				BigDecimal factor = BigDecimal.valueOf(1 + epsilon);
+				lower = e.divide(factor, 0, RoundingMode.FLOOR).toBigInteger();
+				upper = e.multiply(factor).setScale(0, RoundingMode.CEILING).toBigInteger();
+			}
+		}
+
+		public BigInteger getEstimate() {
+			return estimate;
+		}
+
+		public BigInteger getLower() {
+			return lower;
+		}
+
+		public BigInteger getUpper() {
+			return upper;
+		}
+
+		/**
+		 * @return the probability that the number of models is in
+		 * [getLower(), getUpper()]
+		 */
+		public double getConfidence() {
+			return confidence;
+		}
+
+		/**
+		 * @return true if there were less models than the threshold: they
+		 * have all been counted
+		 */
+		public boolean isExact() {
+			return exact;
+		}
+
+		@Override
+		public String toString() {
+			if (exact)
+				return estimate.toString();
+			return estimate + " [" + lower + ", " + upper + "] ("
+					+ Math.round(confidence * 100) + "%)";
+		}
+	}
+
+	private final CNF cnf;
+	private final SymbolTable literalsMap;
+	private final int[] units;
+	private final int[] visible;
+	private final Set<ISolver> activeSolvers = Collections.newSetFromMap(
+			new ConcurrentHashMap<ISolver, Boolean>());
+	private volatile boolean cancelled = false;
+
+	/**
+	 * @param cnf the clauses given by TranslatorSAT
+	 * @param literalsMap tells which literals are hidden (can be null)
+	 * @param units literals that must be true in the models (e.g. pinned
+	 * literals)
+	 */
+	public ApproximateCounter(CNF cnf, SymbolTable literalsMap, int[] units) {
+		this.cnf = cnf;
+		this.literalsMap = literalsMap;
+		this.units = units;
+		int nbVisible = 0;
+		int[] codes = new int[cnf.getNbVariables()];
+		for (int code = 1; code <= cnf.getNbVariables(); code++) {
+			if (literalsMap == null || !literalsMap.isHidden(code))
+				codes[nbVisible++] = code;
+		}
+		this.visible = Arrays.copyOf(codes, nbVisible);
+	}
+
+	/**
+	 * @param epsilon the tolerance (e.g. 0.8: the estimate is between
+	 * count/1.8 and count*1.8)
+	 * @param delta the estimate is wrong with a probability of at most delta
+	 * (e.g. 0.2)
+	 * @param timeout the time (in milliseconds) given to the solver for each
+	 * SAT call
+	 * @param nbThreads the number of rounds run at the same time
+	 * @return the estimate of the number of models
+	 * @throws SolverExecutionException if a SAT call reached its timeout
+	 * @throws InterruptedException if cancel() has been called or if the
+	 * thread has been interrupted
+	 */
+	public Estimate estimate(double epsilon, double delta, long timeout, int nbThreads)
+			throws SolverExecutionException, InterruptedException {
+		if (epsilon <= 0 || delta <= 0 || delta >= 1)
+			throw new IllegalArgumentException("estimate(): epsilon must be > 0 and delta in ]0,1[");
+		long start = System.currentTimeMillis();
+		final int threshold = (int) Math.ceil(1 + 9.84 * (1 + epsilon / (1 + epsilon))
+				* (1 + 1 / epsilon) * (1 + 1 / epsilon));
+		int nbRounds = (int) Math.ceil(17 * Math.log(3 / delta) / Math.log(2));
+		final long timeoutMs = timeout;
+
+		// Few models: they are all counted
+		Round exact = new Round(new Random(0), 0, timeoutMs);
+		int nbModels;
+		try {
+			nbModels = exact.boundedCount(0, threshold);
+		} finally {
+			exact.close();
+		}
+		if (nbModels < threshold) {
+			System.out.println("estimate(): " + nbModels + " models (exact)");
+			return new Estimate(BigInteger.valueOf(nbModels), epsilon, 1, true);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, nbThreads),
+				new ThreadFactory() {
+			private final AtomicInteger number = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "touist-approxmc-" + number.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		List<Future<BigInteger>> rounds = new ArrayList<Future<BigInteger>>();
+		long firstSeed = System.nanoTime();
+		for (int i = 0; i < nbRounds; i++) {
+			final long seed = firstSeed + i;
+			rounds.add(executor.submit(new Callable<BigInteger>() {
+				@Override
+				public BigInteger call() throws Exception {
+					Round round = new Round(new Random(seed), visible.length, timeoutMs);
+					try {
+						return round.run(threshold);
+					} finally {
+						round.close();
+					}
+				}
+			}));
+		}
+		List<BigInteger> estimates = new ArrayList<BigInteger>();
+		try {
+			for (Future<BigInteger> round : rounds) {
+				BigInteger e = round.get();
+				if (e != null) // The round has failed (probability < delta)
+					estimates.add(e);
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SolverExecutionException)
+				throw (SolverExecutionException) e.getCause();
+			if (e.getCause() instanceof InterruptedException)
+				throw (InterruptedException) e.getCause();
+			throw new SolverExecutionException("estimate(): " + e.getCause());
+		} catch (InterruptedException e) {
+			cancel();
+			throw e;
+		} finally {
+			executor.shutdownNow();
+		}
+		if (estimates.isEmpty())
+			throw new SolverExecutionException("estimate(): every round has failed");
+		Collections.sort(estimates);
+		BigInteger median = estimates.get(estimates.size() / 2);
+		Estimate result = new Estimate(median, epsilon, 1 - delta, false);
+		System.out.println("estimate(): " + result + " (" + estimates.size() + " rounds, threshold "
+				+ threshold + ", " + (System.currentTimeMillis() - start) + "ms)");
+		return result;
+	}
+
+	/**
+	 * Stops estimate() from another thread: it throws InterruptedException.
+	 */
+	public void cancel() {
+		cancelled = true;
+		for (ISolver solver : activeSolvers) {
+			solver.expireTimeout();
+		}
+	}
+
+	/**
+	 * One round: a solver with the clauses and up to nbXors random XOR
+	 * constraints over the visible literals (added when first needed). The
+	 * XOR i is only enforced when its selector is assumed, so the first m XORs
+	 * can be chosen at each call.
+	 */
+	private class Round {
+		private final ISolver solver;
+		private final Random random;
+		private final int nbXors;
+		private final List<Integer> selectors = new ArrayList<Integer>();
+		private final long timeout;
+		private boolean unsatisfiable = false;
+
+		Round(Random random, int nbXors, long timeout) {
+			this.random = random;
+			this.nbXors = nbXors;
+			this.timeout = timeout;
+			solver = SolverFactory.newDefault();
+			solver.newVar(cnf.getNbVariables());
+			solver.setTimeoutMs(timeout);
+			activeSolvers.add(solver);
+			try {
+				VecInt clause = new VecInt();
+				for (int literal : cnf.getLiterals()) {
+					if (literal != 0) {
+						clause.push(literal);
+					} else {
+						solver.addClause(clause);
+						clause.clear();
+					}
+				}
+				for (int unit : units) {
+					solver.addClause(new VecInt(new int[] {unit}));
+				}
+			} catch (ContradictionException e) {
+				unsatisfiable = true;
+			}
+		}
+
+		/**
+		 * Adds a random XOR (each visible literal with a probability of 1/2,
+		 * random parity), encoded as a chain of Tseitin variables.
+		 * @return the selector that enforces it
+		 */
+		private int addXor() throws ContradictionException {
+			int selector = solver.nextFreeVarId(true);
+			int chain = 0;
+			for (int code : visible) {
+				if (!random.nextBoolean())
+					continue;
+				if (chain == 0) {
+					chain = code;
+					continue;
+				}
+				// y <=> chain xor code
+				int y = solver.nextFreeVarId(true);
+				solver.addClause(new VecInt(new int[] {-y, chain, code}));
+				solver.addClause(new VecInt(new int[] {-y, -chain, -code}));
+				solver.addClause(new VecInt(new int[] {y, -chain, code}));
+				solver.addClause(new VecInt(new int[] {y, chain, -code}));
+				chain = y;
+			}
+			boolean parity = random.nextBoolean();
+			if (chain == 0) {
+				if (parity) // 0 = 1: no model when enforced
+					solver.addClause(new VecInt(new int[] {-selector}));
+			} else {
+				solver.addClause(new VecInt(new int[] {-selector, parity ? chain : -chain}));
+			}
+			return selector;
+		}
+
+		/**
+		 * @return the number of models with the first m XORs, up to
+		 * threshold (the models are blocked under a selector that is retired
+		 * afterwards)
+		 */
+		int boundedCount(int m, int threshold) throws SolverExecutionException,
+				InterruptedException {
+			if (unsatisfiable)
+				return 0;
+			int count = 0;
+			try {
+				while (selectors.size() < m)
+					selectors.add(addXor());
+				int query = solver.nextFreeVarId(true);
+				VecInt assumptions = new VecInt(m + 1);
+				for (int i = 0; i < m; i++)
+					assumptions.push(selectors.get(i));
+				assumptions.push(query);
+				while (count < threshold) {
+					if (cancelled || Thread.currentThread().isInterrupted())
+						throw new InterruptedException("boundedCount(): cancelled");
+					SolverSAT4J.resetConflictStatistics(solver);
+					if (!solver.isSatisfiable(assumptions))
+						break;
+					count++;
+					int[] model = solver.model();
+					boolean[] value = new boolean[cnf.getNbVariables() + 1];
+					for (int literal : model) {
+						if (Math.abs(literal) <= cnf.getNbVariables())
+							value[Math.abs(literal)] = literal > 0;
+					}
+					VecInt blockingClause = new VecInt(visible.length + 1);
+					blockingClause.push(-query);
+					for (int code : visible)
+						blockingClause.push(value[code] ? -code : code);
+					solver.addClause(blockingClause);
+				}
+				solver.addClause(new VecInt(new int[] {-query})); // Retired
+			} catch (TimeoutException e) {
+				if (cancelled)
+					throw new InterruptedException("boundedCount(): cancelled");
+				throw new SolverExecutionException("boundedCount(): the solver reached its timeout ("
+						+ timeout + "ms)");
+			} catch (ContradictionException e) {
+				// Only with a unit clause (-query or an empty XOR): nothing more to count
+			}
+			return count;
+		}
+
+		/**
+		 * The smallest m such that the cell of the first m XORs has less than
+		 * threshold models (galloping, then binary search: the cells are
+		 * nested, so the count decreases with m).
+		 * @return count(m) * 2^m, or null if even all the XORs leave too many
+		 * models
+		 */
+		BigInteger run(int threshold) throws SolverExecutionException, InterruptedException {
+			int n = nbXors;
+			int low = 0; // count(low) >= threshold
+			int high = 1;
+			int countHigh = -1;
+			while (true) {
+				if (high > n)
+					high = n;
+				int c = boundedCount(high, threshold);
+				if (c < threshold) {
+					countHigh = c;
+					break;
+				}
+				if (high == n)
+					return null;
+				low = high;
+				high *= 2;
+			}
+			while (high - low > 1) {
+				int middle = (low + high) >>> 1;
+				int c = boundedCount(middle, threshold);
+				if (c < threshold) {
+					high = middle;
+					countHigh = c;
+				} else {
+					low = middle;
+				}
+			}
+			return BigInteger.valueOf(countHigh).shiftLeft(high);
+		}
+
+		void close() {
+			activeSolvers.remove(solver);
+		}
+	}
+}
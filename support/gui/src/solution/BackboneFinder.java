@@ -0,0 +1,226 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package solution;
+
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+import org.sat4j.specs.TimeoutException;
+
+import entity.SymbolTable;
+import translation.CNF;
+
+/**
+ * Finds the backbone of a problem: the visible literals that have the same
+ * value in every model, without enumerating the models.
+ *
+ * The candidates are the values of a first model. Each SAT call asks for a
+ * model where at least one candidate of a chunk has the other value (a
+ * clause under a selector, retired after the call):
+ * - if there is one, every candidate that has the other value in this model
+ * is not in the backbone (model-based filtering);
+ * - if there is none, every candidate of the chunk is in the backbone and is
+ * added as a unit clause, which helps the next calls.
+ * The chunks grow after an unsatisfiable call and shrink after a satisfiable
+ * one, so the number of SAT calls stays small even when the backbone is
+ * large. The visible literals that are in no clause are never in the
+ * backbone.
+ *
+ * @author Maël
+ */
+public class BackboneFinder {
+	private final static int MAX_CHUNK_SIZE = 64;
+
+	private final CNF cnf;
+	private final SymbolTable literalsMap;
+	private final Map<String, Boolean> pins;
+	private volatile ISolver solver;
+	private volatile boolean cancelled = false;
+	private int nbSolverCalls = 0;
+
+	/**
+	 * @param cnf the clauses given by TranslatorSAT
+	 * @param literalsMap the "literals map" ("table de correspondance")
+	 */
+	public BackboneFinder(CNF cnf, SymbolTable literalsMap) {
+		this(cnf, literalsMap, Collections.<String, Boolean> emptyMap());
+	}
+
+	/**
+	 * @param pins only the models that give these values to these literals
+	 * (by name) are considered (the pins are then in the backbone); the names
+	 * that are not in the problem are ignored
+	 */
+	public BackboneFinder(CNF cnf, SymbolTable literalsMap, Map<String, Boolean> pins) {
+		this.cnf = cnf;
+		this.literalsMap = literalsMap;
+		this.pins = pins;
+	}
+
+	/**
+	 * @param timeout the time (in milliseconds) given to each SAT call
+	 * @return the value of each visible literal of the backbone (by name, as
+	 * shown in the results), or null if there is no model
+	 * @throws SolverExecutionException if a SAT call reached its timeout
+	 * @throws InterruptedIOException if cancel() has been called
+	 */
+	public Map<String, Boolean> find(long timeout) throws SolverExecutionException,
+			InterruptedIOException {
+		long start = System.currentTimeMillis();
+		final int nbCodes = cnf.getNbVariables();
+		ISolver s = SolverFactory.newDefault();
+		s.newVar(nbCodes);
+		s.setTimeoutMs(timeout);
+		solver = s;
+		nbSolverCalls = 0;
+		boolean[] constrained = new boolean[nbCodes + 1];
+		try {
+			VecInt clause = new VecInt();
+			for (int literal : cnf.getLiterals()) {
+				if (literal != 0) {
+					clause.push(literal);
+					constrained[Math.abs(literal)] = true;
+				} else {
+					s.addClause(clause);
+					clause.clear();
+				}
+			}
+			Map<Integer, Boolean> pinned = SolverSAT4J.pinnedCodes(pins,
+					literalsMap, cnf.getNbVariables());
+			for (Map.Entry<Integer, Boolean> pin : pinned.entrySet()) {
+				int code = pin.getKey();
+				s.addClause(new VecInt(new int[] {pin.getValue() ? code : -code}));
+				constrained[code] = true;
+			}
+		} catch (ContradictionException e) {
+			return null;
+		}
+
+		try {
+			if (!satisfiable(s, VecInt.EMPTY))
+				return null;
+			long[] polarity = SolverSAT4J.polarity(s.model(), nbCodes);
+
+			// The candidates are candidates[0..nbCandidates[, as literals
+			int[] candidates = new int[nbCodes];
+			int nbCandidates = 0;
+			for (int code : SolverSAT4J.visibleCodes(nbCodes, literalsMap)) {
+				if (constrained[code])
+					candidates[nbCandidates++] = isTrue(polarity, code) ? code : -code;
+			}
+			int[] backbone = new int[nbCandidates];
+			int nbBackbone = 0;
+			int chunkSize = 1;
+			while (nbCandidates > 0) {
+				int size = Math.min(chunkSize, nbCandidates);
+				int selector = s.nextFreeVarId(true);
+				VecInt someFlipped = new VecInt(size + 1);
+				someFlipped.push(-selector);
+				for (int i = 0; i < size; i++)
+					someFlipped.push(-candidates[i]);
+				s.addClause(someFlipped);
+				boolean flipped = satisfiable(s, new VecInt(new int[] {selector}));
+				if (flipped) {
+					// Filtering: the candidates that changed are not in the backbone
+					polarity = SolverSAT4J.polarity(s.model(), nbCodes);
+					int kept = 0;
+					for (int i = 0; i < nbCandidates; i++) {
+						int literal = candidates[i];
+						if (isTrue(polarity, Math.abs(literal)) == (literal > 0))
+							candidates[kept++] = literal;
+					}
+					nbCandidates = kept;
+					chunkSize = Math.max(1, chunkSize / 2);
+				} else {
+					for (int i = 0; i < size; i++) {
+						backbone[nbBackbone++] = candidates[i];
+						s.addClause(new VecInt(new int[] {candidates[i]}));
+					}
+					System.arraycopy(candidates, size, candidates, 0, nbCandidates - size);
+					nbCandidates -= size;
+					chunkSize = Math.min(MAX_CHUNK_SIZE, chunkSize * 2);
+				}
+				s.addClause(new VecInt(new int[] {-selector})); // Retired
+			}
+
+			Map<String, Boolean> result = new LinkedHashMap<String, Boolean>();
+			for (int i = 0; i < nbBackbone; i++) {
+				int code = Math.abs(backbone[i]);
+				String name = (literalsMap == null) ? null : literalsMap.getName(code);
+				result.put((name != null) ? name : Integer.toString(code), backbone[i] > 0);
+			}
+			System.out.println("find(): " + nbBackbone + " literals in the backbone ("
+					+ nbSolverCalls + " SAT calls, " + (System.currentTimeMillis() - start) + "ms)");
+			return result;
+		} catch (ContradictionException e) {
+			// The backbone literals and the selectors are consistent
+			throw new IllegalStateException(e);
+		} catch (TimeoutException e) {
+			if (cancelled)
+				throw new InterruptedIOException("find(): the search has been cancelled");
+			throw new SolverExecutionException("find(): the solver reached its timeout ("
+					+ timeout + "ms)");
+		} finally {
+			solver = null;
+		}
+	}
+
+	private boolean satisfiable(ISolver s, IVecInt assumptions) throws TimeoutException,
+			InterruptedIOException {
+		if (cancelled || Thread.currentThread().isInterrupted())
+			throw new InterruptedIOException("find(): the search has been cancelled");
+		nbSolverCalls++;
+		SolverSAT4J.resetConflictStatistics(s);
+		return s.isSatisfiable(assumptions);
+	}
+
+	private static boolean isTrue(long[] polarity, int code) {
+		return (polarity[code >> 6] & (1L << code)) != 0;
+	}
+
+	/**
+	 * @return the number of SAT calls of the last find()
+	 */
+	public int getNbSolverCalls() {
+		return nbSolverCalls;
+	}
+
+	/**
+	 * Stops find() (from another thread): it throws InterruptedIOException.
+	 */
+	public void cancel() {
+		cancelled = true;
+		ISolver s = solver;
+		if (s != null)
+			s.expireTimeout();
+	}
+}
@@ -0,0 +1,493 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package solution;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A QF_IDL or QF_RDL problem, as written by 'touist --smt' (SMT-LIB 2),
+ * turned into clauses for the SAT solver (Tseitin encoding) and "atoms":
+ * each atom is a SAT variable that means "x - y <= c".
+ *
+ * Every comparison is normalized into atoms: "x - y < c" is the negation of
+ * "y - x <= -c", "x - y = c" is the conjunction of two atoms and "x <= c"
+ * is "x - zero <= c" where zero is the numeric variable 0 (its value is
+ * subtracted from every value of a model). The constants are scaled into
+ * longs (see getWeight()).
+ *
+ * @author Maël
+ */
+public class DifferenceLogicProblem {
+	/** The node that is always 0 (it has no name: it is not in numerics) */
+	public final static int ZERO = 0;
+
+	private final boolean integers;
+
+	/** SAT variables are 1..nbVariables */
+	private int nbVariables = 0;
+	private final List<int[]> clauses = new ArrayList<int[]>();
+	/** The SAT variable that is always true */
+	private final int trueVariable;
+
+	/** The Bool variables (SMT name -> SAT variable), in declaration order */
+	private final Map<String, Integer> booleans = new LinkedHashMap<String, Integer>();
+	/** The Int or Real variables (SMT name -> node 1..), in declaration order */
+	private final Map<String, Integer> numerics = new LinkedHashMap<String, Integer>();
+
+	/** The atoms (SAT variable -> "x - y <= c"), c being unscaled */
+	private final Map<Integer, Atom> atoms = new LinkedHashMap<Integer, Atom>();
+	private final Map<Atom, Integer> atomVariables = new HashMap<Atom, Integer>();
+	/** The SAT variables of the atoms, in increasing order */
+	private int[] atomList;
+	/** The constants are multiplied by 10^scale (and by delta, see getWeight()) */
+	private int scale = 0;
+	private long delta = 1;
+
+	private final static class Atom {
+		final int x;
+		final int y;
+		final BigDecimal c;
+		long scaled;
+
+		Atom(int x, int y, BigDecimal c) {
+			this.x = x;
+			this.y = y;
+			this.c = c.stripTrailingZeros();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Atom))
+				return false;
+			Atom a = (Atom) obj;
+			return x == a.x && y == a.y && c.compareTo(a.c) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * x + y) + c.hashCode();
+		}
+	}
+
+	/** A linear term: coefficient of each node, and a constant */
+	private final static class Linear {
+		final Map<Integer, BigDecimal> coefficients = new HashMap<Integer, BigDecimal>();
+		BigDecimal constant = BigDecimal.ZERO;
+
+		Linear add(Linear other, int sign) {
+			for (Map.Entry<Integer, BigDecimal> e : other.coefficients.entrySet()) {
+				BigDecimal c = coefficients.get(e.getKey());
+				BigDecimal term = (sign > 0) ? e.getValue() : e.getValue().negate();
+				BigDecimal sum = (c == null) ? term : c.add(term);
+				if (sum.signum() == 0)
+					coefficients.remove(e.getKey());
+				else
+					coefficients.put(e.getKey(), sum);
+			}
+			constant = (sign > 0) ? constant.add(other.constant) : constant.subtract(other.constant);
+			return this;
+		}
+
+		Linear multiply(BigDecimal factor) {
+			for (Map.Entry<Integer, BigDecimal> e : coefficients.entrySet())
+				e.setValue(e.getValue().multiply(factor));
+			if (factor.signum() == 0)
+				coefficients.clear();
+			constant = constant.multiply(factor);
+			return this;
+		}
+	}
+
+	/**
+	 * @param smtlib the output of 'touist --smt QF_IDL' or 'touist --smt QF_RDL'
+	 * @param integers true for QF_IDL (a strict comparison is then the non
+	 * strict one shifted by 1)
+	 * @throws IOException if the problem is not a difference logic problem
+	 */
+	public DifferenceLogicProblem(String smtlib, boolean integers) throws IOException {
+		this.integers = integers;
+		this.trueVariable = newVariable();
+		clauses.add(new int[] {trueVariable});
+		for (Object command : readAll(smtlib)) {
+			if (!(command instanceof List))
+				throw new IOException("DifferenceLogicProblem(): unexpected '" + command + "'");
+			List<?> c = (List<?>) command;
+			if (c.isEmpty())
+				continue;
+			if ("declare-fun".equals(c.get(0)) && c.size() == 4) {
+				declare((String) c.get(1), (String) c.get(3));
+			} else if ("assert".equals(c.get(0)) && c.size() == 2) {
+				clauses.add(new int[] {encode(c.get(1))});
+			}
+			// set-logic, check-sat and get-value are not needed
+		}
+		atomList = new int[atoms.size()];
+		int i = 0;
+		for (int variable : atoms.keySet())
+			atomList[i++] = variable;
+		scaleConstants();
+	}
+
+	private void declare(String name, String sort) throws IOException {
+		if (sort.equals("Bool"))
+			booleans.put(name, newVariable());
+		else if (sort.equals("Int") || sort.equals("Real"))
+			numerics.put(name, numerics.size() + 1); // ZERO is node 0
+		else
+			throw new IOException("declare(): unknown sort '" + sort + "'");
+	}
+
+	private int newVariable() {
+		return ++nbVariables;
+	}
+
+	/**
+	 * Tseitin encoding of a Bool term.
+	 * @return the SAT literal that is equivalent to the term
+	 */
+	private int encode(Object term) throws IOException {
+		if (term instanceof String) {
+			String symbol = (String) term;
+			if (symbol.equals("true"))
+				return trueVariable;
+			if (symbol.equals("false"))
+				return -trueVariable;
+			Integer variable = booleans.get(symbol);
+			if (variable == null)
+				throw new IOException("encode(): '" + symbol + "' is not a Bool");
+			return variable;
+		}
+		List<?> list = (List<?>) term;
+		String op = (String) list.get(0);
+		int n = list.size() - 1;
+		if (op.equals("not") && n == 1)
+			return -encode(list.get(1));
+		if (op.equals("and") || op.equals("or")) {
+			boolean and = op.equals("and");
+			int[] args = new int[n];
+			for (int i = 0; i < n; i++)
+				args[i] = and ? encode(list.get(i + 1)) : -encode(list.get(i + 1));
+			int t = newVariable();
+			// and: t <=> (a1 and ... and an); or: -t <=> (-a1 and ... and -an)
+			int lit = and ? t : -t;
+			int[] big = new int[n + 1];
+			big[0] = lit;
+			for (int i = 0; i < n; i++) {
+				clauses.add(new int[] {-lit, args[i]});
+				big[i + 1] = -args[i];
+			}
+			clauses.add(big);
+			return t;
+		}
+		if (op.equals("=>") && n == 2)
+			return encode(list("or", list("not", list.get(1)), list.get(2)));
+		if (op.equals("xor") && n == 2) {
+			int a = encode(list.get(1));
+			int b = encode(list.get(2));
+			int t = newVariable();
+			clauses.add(new int[] {-t, a, b});
+			clauses.add(new int[] {-t, -a, -b});
+			clauses.add(new int[] {t, -a, b});
+			clauses.add(new int[] {t, a, -b});
+			return t;
+		}
+		if (n == 2 && (op.equals("<=") || op.equals("<") || op.equals(">=")
+				|| op.equals(">") || op.equals("="))) {
+			if (op.equals("=") && isBool(list.get(1)))
+				return encode(list("and", list("=>", list.get(1), list.get(2)),
+						list("=>", list.get(2), list.get(1))));
+			if (op.equals("="))
+				return encode(list("and", list("<=", list.get(1), list.get(2)),
+						list(">=", list.get(1), list.get(2))));
+			Linear left = linear(list.get(1));
+			Linear right = linear(list.get(2));
+			// Normalized into "e <= 0" or "e < 0"
+			Linear e = op.startsWith("<") ? left.add(right, -1) : right.add(left, -1);
+			return comparison(e, op.length() == 1, term);
+		}
+		throw new IOException("encode(): unexpected '" + op + "' with " + n + " arguments");
+	}
+
+	/**
+	 * @param strict true for "e < 0", false for "e <= 0"
+	 */
+	private int comparison(Linear e, boolean strict, Object term) throws IOException {
+		int x = ZERO;
+		int y = ZERO;
+		for (Map.Entry<Integer, BigDecimal> c : e.coefficients.entrySet()) {
+			if (c.getValue().compareTo(BigDecimal.ONE) == 0 && x == ZERO)
+				x = c.getKey();
+			else if (c.getValue().compareTo(BigDecimal.ONE.negate()) == 0 && y == ZERO)
+				y = c.getKey();
+			else
+				throw new IOException("comparison(): not a difference constraint: " + toString(term));
+		}
+		// x - y + k <= 0 (or < 0): "x - y <= -k" or "not (y - x <= k)"
+		BigDecimal k = e.constant;
+		if (x == y) // No variable left
+			return ((strict ? k.signum() < 0 : k.signum() <= 0)) ? trueVariable : -trueVariable;
+		if (integers && k.stripTrailingZeros().scale() > 0)
+			throw new IOException("comparison(): not an integer constant: " + toString(term));
+		return strict ? -atom(y, x, k) : atom(x, y, k.negate());
+	}
+
+	/**
+	 * @return the SAT variable of "x - y <= c"
+	 */
+	private int atom(int x, int y, BigDecimal c) {
+		Atom atom = new Atom(x, y, c);
+		Integer variable = atomVariables.get(atom);
+		if (variable == null) {
+			variable = newVariable();
+			atomVariables.put(atom, variable);
+			atoms.put(variable, atom);
+		}
+		return variable;
+	}
+
+	private boolean isBool(Object term) {
+		if (term instanceof String)
+			return booleans.containsKey(term) || term.equals("true") || term.equals("false");
+		String op = (String) ((List<?>) term).get(0);
+		return op.equals("not") || op.equals("and") || op.equals("or") || op.equals("=>")
+				|| op.equals("xor") || op.equals("=") || op.equals("<") || op.equals("<=")
+				|| op.equals(">") || op.equals(">=");
+	}
+
+	private Linear linear(Object term) throws IOException {
+		Linear result = new Linear();
+		if (term instanceof String) {
+			String symbol = (String) term;
+			if (isNumeral(symbol)) {
+				try {
+					result.constant = new BigDecimal(symbol);
+					return result;
+				} catch (NumberFormatException e) {
+					throw new IOException("linear(): '" + symbol + "' is not a number");
+				}
+			}
+			Integer node = numerics.get(symbol);
+			if (node == null)
+				throw new IOException("linear(): '" + symbol + "' is not an Int or Real");
+			result.coefficients.put(node, BigDecimal.ONE);
+			return result;
+		}
+		List<?> list = (List<?>) term;
+		String op = (String) list.get(0);
+		int n = list.size() - 1;
+		if (op.equals("-") && n == 1)
+			return linear(list.get(1)).multiply(BigDecimal.ONE.negate());
+		if ((op.equals("+") || op.equals("-")) && n >= 1) {
+			result.add(linear(list.get(1)), 1);
+			for (int i = 2; i <= n; i++)
+				result.add(linear(list.get(i)), op.equals("+") ? 1 : -1);
+			return result;
+		}
+		if ((op.equals("*") || op.equals("/")) && n == 2) {
+			Linear a = linear(list.get(1));
+			Linear b = linear(list.get(2));
+			if (b.coefficients.isEmpty() && op.equals("*"))
+				return a.multiply(b.constant);
+			if (a.coefficients.isEmpty() && op.equals("*"))
+				return b.multiply(a.constant);
+			if (b.coefficients.isEmpty() && b.constant.signum() != 0) {
+				try {
+					return a.multiply(BigDecimal.ONE.divide(b.constant));
+				} catch (ArithmeticException e) { // 1/3 is not a decimal
+				}
+			}
+		}
+		throw new IOException("linear(): not a difference logic term: " + toString(term));
+	}
+
+	/**
+	 * Turns the constants into longs: c*10^scale*delta, where 10^scale
+	 * removes the decimals and delta (larger than the number of strict
+	 * constraints of any cycle) makes "< c" the long just below "<= c".
+	 */
+	private void scaleConstants() throws IOException {
+		for (Atom atom : atoms.values())
+			scale = Math.max(scale, atom.c.scale());
+		delta = integers ? 1 : getNbNodes() + 1;
+		BigDecimal factor = BigDecimal.ONE.movePointRight(scale).multiply(BigDecimal.valueOf(delta));
+		// The sum of the weights of a cycle must fit in a long
+		BigDecimal max = BigDecimal.valueOf(Long.MAX_VALUE / 4 / (atoms.size() + 1));
+		for (Atom atom : atoms.values()) {
+			BigDecimal scaled = atom.c.multiply(factor);
+			if (scaled.abs().compareTo(max) > 0)
+				throw new IOException("scaleConstants(): the constant " + atom.c + " is too large");
+			atom.scaled = scaled.longValueExact();
+		}
+	}
+
+	/**
+	 * @param literal a literal of an atom "x - y <= c"
+	 * @return the source of its edge in the constraint graph: y (the edge
+	 * of the negation "y - x < -c" is x -> y)
+	 */
+	public int getSource(int literal) {
+		Atom atom = atoms.get(Math.abs(literal));
+		return (literal > 0) ? atom.y : atom.x;
+	}
+
+	/**
+	 * @param literal a literal of an atom "x - y <= c"
+	 * @return the target of its edge in the constraint graph: x (y for the
+	 * negation)
+	 */
+	public int getTarget(int literal) {
+		Atom atom = atoms.get(Math.abs(literal));
+		return (literal > 0) ? atom.x : atom.y;
+	}
+
+	/**
+	 * @return the weight of the edge of the literal of an atom: c for "x - y
+	 * <= c", -c - 1 for its negation "y - x < -c" (the constants being
+	 * scaled)
+	 */
+	public long getWeight(int literal) {
+		Atom atom = atoms.get(Math.abs(literal));
+		return (literal > 0) ? atom.scaled : -atom.scaled - 1;
+	}
+
+	/**
+	 * @return a value of a model in the problem's unit (the potentials are
+	 * scaled)
+	 */
+	public double unscale(long value) {
+		return BigDecimal.valueOf(value).movePointLeft(scale).doubleValue() / delta;
+	}
+
+	/**
+	 * @return the SAT variables of the atoms, in increasing order
+	 */
+	public int[] getAtoms() {
+		return atomList;
+	}
+
+	public List<int[]> getClauses() {
+		return clauses;
+	}
+
+	public int getNbVariables() {
+		return nbVariables;
+	}
+
+	/**
+	 * @return the Bool variables (name -> SAT variable)
+	 */
+	public Map<String, Integer> getBooleans() {
+		return booleans;
+	}
+
+	/**
+	 * @return the Int or Real variables (name -> node), ZERO excluded
+	 */
+	public Map<String, Integer> getNumerics() {
+		return numerics;
+	}
+
+	/**
+	 * @return the nodes are 0..getNbNodes()-1 (ZERO and the Int or Real
+	 * variables)
+	 */
+	public int getNbNodes() {
+		return numerics.size() + 1;
+	}
+
+	/**
+	 * @return true if the symbol is a numeral or a decimal ("0", "2.",
+	 * "1e-05"): an SMT-LIB symbol cannot start with a digit
+	 */
+	private static boolean isNumeral(String symbol) {
+		char c = symbol.charAt(0);
+		return (c >= '0' && c <= '9') || (c == '-' && symbol.length() > 1
+				&& symbol.charAt(1) >= '0' && symbol.charAt(1) <= '9');
+	}
+
+	private static List<Object> list(Object... elements) {
+		List<Object> list = new ArrayList<Object>(elements.length);
+		for (Object e : elements)
+			list.add(e);
+		return list;
+	}
+
+	private static String toString(Object term) {
+		if (term instanceof String)
+			return (String) term;
+		StringBuilder b = new StringBuilder("(");
+		for (Object e : (List<?>) term)
+			b.append(b.length() > 1 ? " " : "").append(toString(e));
+		return b.append(')').toString();
+	}
+
+	/**
+	 * Reads the s-expressions of the text (without recursion: touist nests
+	 * its 'and's as deep as there are formulas).
+	 * @return the top level s-expressions; an s-expression is a String or a
+	 * List of s-expressions
+	 */
+	private static List<Object> readAll(String text) throws IOException {
+		List<List<Object>> stack = new ArrayList<List<Object>>();
+		List<Object> top = new ArrayList<Object>();
+		List<Object> current = top;
+		int i = 0;
+		int length = text.length();
+		while (i < length) {
+			char c = text.charAt(i);
+			if (c == '(') {
+				stack.add(current);
+				List<Object> list = new ArrayList<Object>(3);
+				current.add(list);
+				current = list;
+				i++;
+			} else if (c == ')') {
+				if (stack.isEmpty())
+					throw new IOException("readAll(): unbalanced ')' at " + i);
+				current = stack.remove(stack.size() - 1);
+				i++;
+			} else if (c == ';') {
+				while (i < length && text.charAt(i) != '\n')
+					i++;
+			} else if (Character.isWhitespace(c)) {
+				i++;
+			} else {
+				int start = i;
+				while (i < length && !Character.isWhitespace(text.charAt(i))
+						&& text.charAt(i) != '(' && text.charAt(i) != ')')
+					i++;
+				current.add(text.substring(start, i).intern());
+			}
+		}
+		if (!stack.isEmpty())
+			throw new IOException("readAll(): missing ')'");
+		return top;
+	}
+}
@@ -0,0 +1,679 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package solution;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import entity.SymbolTable;
+import translation.CNF;
+
+/**
+ * Exact model counting (#SAT) and knowledge compilation of the clauses given
+ * by TranslatorSAT. The search is a DPLL with unit propagation that splits
+ * the remaining clauses into independent components (they share no
+ * variable, so their counts are multiplied) and caches the result of each
+ * component (the same component appears again in other branches).
+ *
+ * Only the visible literals are counted, as in the ModelList: two models
+ * that only differ on hidden literals ('&45' literals, issue #88) are the
+ * same model. The search branches on the visible variables first; a
+ * component that only has hidden variables counts for 1 if it is
+ * satisfiable, 0 otherwise.
+ *
+ * count() only keeps the counts. compile() keeps the search tree as a
+ * decision-DNNF (a d-DNNF whose OR nodes are decisions on a variable): the
+ * children of an AND node share no variable and the two children of a
+ * decision cannot have a common model. The models are then counted in the
+ * size of the d-DNNF and enumerated in a time linear in the number of
+ * models (see Enumerator).
+ *
+ * @author Maël
+ */
+public class KnowledgeCompiler {
+	/** The cache is emptied when it has more entries (only the sharing of
+	 * the d-DNNF nodes is lost) */
+	private final static int MAX_CACHE_SIZE = 1 << 20;
+	/** The search is recursive: it runs in a thread with a large stack */
+	private final static long STACK_SIZE = 512L << 20;
+
+	/**
+	 * A node of the d-DNNF over the visible variables. count is the number
+	 * of models of the node over its own variables.
+	 */
+	public static abstract class Node {
+		final BigInteger count;
+
+		Node(BigInteger count) {
+			this.count = count;
+		}
+
+		public BigInteger getCount() {
+			return count;
+		}
+	}
+
+	/**
+	 * FALSE (no model), TRUE (one empty model) or, when only counting, the
+	 * count of a component (cannot be enumerated)
+	 */
+	private static class Leaf extends Node {
+		Leaf(BigInteger count) {
+			super(count);
+		}
+	}
+
+	/**
+	 * Decomposable AND: the literals implied by unit propagation, the free
+	 * variables (true or false in the models) and the sub-components.
+	 */
+	private static class And extends Node {
+		final int[] literals;
+		final int[] free;
+		final Node[] children;
+
+		And(int[] literals, int[] free, Node[] children, BigInteger count) {
+			super(count);
+			this.literals = literals;
+			this.free = free;
+			this.children = children;
+		}
+	}
+
+	/** Deterministic OR: variable true and high, or variable false and low */
+	private static class Decision extends Node {
+		final int variable;
+		final Node high;
+		final Node low;
+
+		Decision(int variable, Node high, Node low) {
+			super(high.count.add(low.count));
+			this.variable = variable;
+			this.high = high;
+			this.low = low;
+		}
+	}
+
+	private final static Node FALSE = new Leaf(BigInteger.ZERO);
+	private final static Node TRUE = new Leaf(BigInteger.ONE);
+
+	/** The clauses of a component, as a key of the cache */
+	private static class Key {
+		private final int[] literals;
+		private final int hash;
+
+		Key(int[] literals) {
+			this.literals = literals;
+			this.hash = Arrays.hashCode(literals);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && Arrays.equals(literals, ((Key) obj).literals);
+		}
+	}
+
+	private final static Comparator<int[]> CLAUSE_ORDER = new Comparator<int[]>() {
+		@Override
+		public int compare(int[] c1, int[] c2) {
+			for (int i = 0; i < c1.length && i < c2.length; i++) {
+				if (c1[i] != c2[i])
+					return c1[i] < c2[i] ? -1 : 1;
+			}
+			return c1.length - c2.length;
+		}
+	};
+
+	private final CNF cnf;
+	private final SymbolTable literalsMap;
+	private final int[] units;
+	private final int nbVariables;
+	private boolean compiling;
+	private volatile boolean cancelled = false;
+	private final Map<Key, Node> cache = new LinkedHashMap<Key, Node>();
+	private long nbDecisions = 0;
+
+	// Work arrays, only used between two recursive calls
+	private final byte[] value;
+	private final int[] parent;
+	private final int[] occurrences;
+
+	/**
+	 * @param cnf the clauses given by TranslatorSAT
+	 * @param literalsMap tells which literals are hidden (can be null)
+	 */
+	public KnowledgeCompiler(CNF cnf, SymbolTable literalsMap) {
+		this(cnf, literalsMap, new int[0]);
+	}
+
+	/**
+	 * @param units literals that must be true in the models (e.g. pinned
+	 * literals)
+	 */
+	public KnowledgeCompiler(CNF cnf, SymbolTable literalsMap, int[] units) {
+		this.cnf = cnf;
+		this.literalsMap = literalsMap;
+		this.units = units;
+		this.nbVariables = cnf.getNbVariables();
+		this.value = new byte[nbVariables + 1];
+		this.parent = new int[nbVariables + 1];
+		this.occurrences = new int[nbVariables + 1];
+	}
+
+	/**
+	 * @return the number of models (over the visible literals)
+	 * @throws CancellationException if cancel() has been called
+	 */
+	public BigInteger count() {
+		return run(false).count;
+	}
+
+	/**
+	 * @return the d-DNNF of the clauses (over the visible literals)
+	 * @throws CancellationException if cancel() has been called
+	 */
+	public Node compile() {
+		return run(true);
+	}
+
+	/**
+	 * Stops count() or compile() (from another thread): they throw
+	 * CancellationException.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	private boolean isVisible(int variable) {
+		return literalsMap == null || !literalsMap.isHidden(variable);
+	}
+
+	private Node run(final boolean compile) {
+		final Node[] result = new Node[1];
+		final Throwable[] error = new Throwable[1];
+		Thread thread = new Thread(null, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					result[0] = search(compile);
+				} catch (Throwable e) {
+					error[0] = e;
+				}
+			}
+		}, "touist-knowledge-compiler", STACK_SIZE);
+		thread.start();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			cancel();
+			Thread.currentThread().interrupt();
+			throw new CancellationException("run(): interrupted");
+		}
+		if (error[0] instanceof RuntimeException)
+			throw (RuntimeException) error[0];
+		if (error[0] instanceof Error)
+			throw (Error) error[0];
+		return result[0];
+	}
+
+	private Node search(boolean compile) {
+		long start = System.currentTimeMillis();
+		compiling = compile;
+		cache.clear();
+		nbDecisions = 0;
+		List<int[]> clauses = new ArrayList<int[]>(cnf.getNbClauses() + units.length);
+		int[] literals = cnf.getLiterals();
+		int begin = 0;
+		for (int i = 0; i < literals.length; i++) {
+			if (literals[i] == 0) {
+				int[] clause = normalize(Arrays.copyOfRange(literals, begin, i));
+				if (clause != null)
+					clauses.add(clause);
+				begin = i + 1;
+			}
+		}
+		for (int unit : units) {
+			clauses.add(new int[] {unit});
+		}
+		int[] variables = new int[nbVariables];
+		for (int v = 1; v <= nbVariables; v++) {
+			variables[v - 1] = v;
+		}
+		Node root = formula(clauses, variables);
+		System.out.println("search(): " + root.count + " models (" + nbDecisions
+				+ " decisions, " + cache.size() + " cached components, "
+				+ (System.currentTimeMillis() - start) + "ms)");
+		cache.clear();
+		return root;
+	}
+
+	/**
+	 * @return the clause sorted by variable without duplicated literal, or
+	 * null if it is a tautology
+	 */
+	private static int[] normalize(int[] clause) {
+		Integer[] sorted = new Integer[clause.length];
+		for (int i = 0; i < clause.length; i++)
+			sorted[i] = clause[i];
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer l1, Integer l2) {
+				int v1 = Math.abs(l1), v2 = Math.abs(l2);
+				return v1 != v2 ? v1 - v2 : l1 - l2;
+			}
+		});
+		int[] result = new int[clause.length];
+		int size = 0;
+		for (Integer literal : sorted) {
+			if (size > 0 && result[size - 1] == literal)
+				continue;
+			if (size > 0 && result[size - 1] == -literal)
+				return null;
+			result[size++] = literal;
+		}
+		return Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * Unit propagation, then the product of the components of what remains.
+	 * @param clauses the clauses (none is empty or has an assigned variable)
+	 * @param variables the variables that must be counted (those of clauses
+	 * and maybe some that have disappeared and are now free)
+	 */
+	private Node formula(List<int[]> clauses, int[] variables) {
+		if (cancelled)
+			throw new CancellationException("formula(): cancelled");
+		List<Integer> implied = new ArrayList<Integer>();
+		while (true) {
+			boolean found = false;
+			for (int[] clause : clauses) {
+				if (clause.length != 1)
+					continue;
+				int literal = clause[0];
+				int v = Math.abs(literal);
+				byte wanted = (byte) (literal > 0 ? 1 : -1);
+				if (value[v] == -wanted) {
+					clearValues(implied);
+					return FALSE;
+				}
+				if (value[v] == 0) {
+					value[v] = wanted;
+					implied.add(literal);
+					found = true;
+				}
+			}
+			if (!found)
+				break;
+			clauses = simplify(clauses);
+			if (clauses == null) {
+				clearValues(implied);
+				return FALSE;
+			}
+		}
+		clearValues(implied);
+
+		// The variables that are in no clause anymore are free
+		for (int[] clause : clauses)
+			for (int literal : clause)
+				occurrences[Math.abs(literal)]++;
+		for (int literal : implied)
+			occurrences[Math.abs(literal)] = -1;
+		int nbFree = 0;
+		int[] free = new int[variables.length];
+		for (int v : variables) {
+			if (occurrences[v] == 0 && isVisible(v))
+				free[nbFree++] = v;
+		}
+		for (int v : variables)
+			occurrences[v] = 0;
+		for (int literal : implied)
+			occurrences[Math.abs(literal)] = 0;
+
+		List<List<int[]>> components = components(clauses);
+		Node[] children = new Node[components.size()];
+		BigInteger count = BigInteger.ONE.shiftLeft(nbFree);
+		for (int i = 0; i < children.length; i++) {
+			children[i] = component(components.get(i));
+			if (children[i] == FALSE)
+				return FALSE;
+			count = count.multiply(children[i].count);
+		}
+		if (!compiling)
+			return new Leaf(count);
+		int nbVisible = 0;
+		int[] literals = new int[implied.size()];
+		for (int literal : implied) {
+			if (isVisible(Math.abs(literal)))
+				literals[nbVisible++] = literal;
+		}
+		if (nbVisible == 0 && nbFree == 0 && children.length == 1)
+			return children[0];
+		return new And(Arrays.copyOf(literals, nbVisible), Arrays.copyOf(free, nbFree),
+				children, count);
+	}
+
+	private void clearValues(List<Integer> implied) {
+		for (int literal : implied)
+			value[Math.abs(literal)] = 0;
+	}
+
+	/**
+	 * @return the clauses without the satisfied clauses and the false
+	 * literals (following value[]), or null if a clause becomes empty
+	 */
+	private List<int[]> simplify(List<int[]> clauses) {
+		List<int[]> result = new ArrayList<int[]>(clauses.size());
+		next: for (int[] clause : clauses) {
+			int nbFalse = 0;
+			for (int literal : clause) {
+				byte v = value[Math.abs(literal)];
+				if (v == 0)
+					continue;
+				if ((v > 0) == (literal > 0))
+					continue next; // Satisfied
+				nbFalse++;
+			}
+			if (nbFalse == 0) {
+				result.add(clause);
+				continue;
+			}
+			if (nbFalse == clause.length)
+				return null;
+			int[] reduced = new int[clause.length - nbFalse];
+			int size = 0;
+			for (int literal : clause) {
+				if (value[Math.abs(literal)] == 0)
+					reduced[size++] = literal;
+			}
+			result.add(reduced);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the clauses grouped by connected components (two clauses are
+	 * connected when they share a variable)
+	 */
+	private List<List<int[]>> components(List<int[]> clauses) {
+		List<List<int[]>> components = new ArrayList<List<int[]>>();
+		if (clauses.isEmpty())
+			return components;
+		for (int[] clause : clauses)
+			for (int literal : clause)
+				parent[Math.abs(literal)] = Math.abs(literal);
+		for (int[] clause : clauses) {
+			int root = find(Math.abs(clause[0]));
+			for (int i = 1; i < clause.length; i++) {
+				int other = find(Math.abs(clause[i]));
+				if (other != root) {
+					parent[other] = root;
+				}
+			}
+		}
+		Map<Integer, List<int[]>> byRoot = new LinkedHashMap<Integer, List<int[]>>();
+		for (int[] clause : clauses) {
+			int root = find(Math.abs(clause[0]));
+			List<int[]> component = byRoot.get(root);
+			if (component == null) {
+				component = new ArrayList<int[]>();
+				byRoot.put(root, component);
+			}
+			component.add(clause);
+		}
+		components.addAll(byRoot.values());
+		return components;
+	}
+
+	private int find(int v) {
+		while (parent[v] != v) {
+			parent[v] = parent[parent[v]];
+			v = parent[v];
+		}
+		return v;
+	}
+
+	/**
+	 * The component is first looked up in the cache (its sorted clauses are
+	 * the key). Then branches on the visible variable that has the most occurrences (or on a
+	 * hidden one if the component has no visible variable: only its
+	 * satisfiability is then needed).
+	 */
+	private Node component(List<int[]> clauses) {
+		Collections.sort(clauses, CLAUSE_ORDER);
+		int size = clauses.size();
+		for (int[] clause : clauses)
+			size += clause.length;
+		int[] flat = new int[size];
+		int k = 0;
+		for (int[] clause : clauses) {
+			for (int literal : clause)
+				flat[k++] = literal;
+			flat[k++] = 0;
+		}
+		Key key = new Key(flat);
+		Node cached = cache.get(key);
+		if (cached != null)
+			return cached;
+
+		int nbVariables = 0;
+		for (int[] clause : clauses) {
+			for (int literal : clause) {
+				if (occurrences[Math.abs(literal)]++ == 0)
+					nbVariables++;
+			}
+		}
+		int best = 0;
+		int bestOccurrences = 0;
+		boolean bestVisible = false;
+		int[] variables = new int[nbVariables];
+		int n = 0;
+		for (int[] clause : clauses) {
+			for (int literal : clause) {
+				int v = Math.abs(literal);
+				if (occurrences[v] <= 0)
+					continue; // Already seen
+				variables[n++] = v;
+				boolean visible = isVisible(v);
+				if (best == 0 || (visible && !bestVisible)
+						|| (visible == bestVisible && occurrences[v] > bestOccurrences)) {
+					best = v;
+					bestOccurrences = occurrences[v];
+					bestVisible = visible;
+				}
+				occurrences[v] = -1;
+			}
+		}
+		for (int v : variables)
+			occurrences[v] = 0;
+		int[] others = new int[nbVariables - 1];
+		n = 0;
+		for (int v : variables) {
+			if (v != best)
+				others[n++] = v;
+		}
+
+		nbDecisions++;
+		Node high = branch(clauses, best, others);
+		Node node;
+		if (!bestVisible && high != FALSE) {
+			node = TRUE; // Only the satisfiability matters
+		} else {
+			Node low = branch(clauses, -best, others);
+			if (!bestVisible)
+				node = (low == FALSE) ? FALSE : TRUE;
+			else if (high == FALSE && low == FALSE)
+				node = FALSE;
+			else if (compiling)
+				node = new Decision(best, high, low);
+			else
+				node = new Leaf(high.count.add(low.count));
+		}
+		if (cache.size() >= MAX_CACHE_SIZE)
+			cache.clear();
+		cache.put(key, node);
+		return node;
+	}
+
+	private Node branch(List<int[]> clauses, int literal, int[] others) {
+		value[Math.abs(literal)] = (byte) (literal > 0 ? 1 : -1);
+		List<int[]> simplified = simplify(clauses);
+		value[Math.abs(literal)] = 0;
+		if (simplified == null)
+			return FALSE;
+		return formula(simplified, others);
+	}
+
+	/**
+	 * Enumerates the models of a d-DNNF (given by compile()): each call to
+	 * next() writes the values of the next model into an array indexed by
+	 * variable (+1 true, -1 false). The time between two models is linear in
+	 * the size of the model.
+	 */
+	public static class Enumerator {
+		private final Node node;
+		private final byte[] values;
+		private boolean started = false;
+		// Decision
+		private Enumerator branch;
+		private boolean onLow;
+		// And
+		private Enumerator[] children;
+		private long freeCounter;
+		private BigInteger freeCounterBig;
+
+		/**
+		 * @param values receives the values of the variables (index:
+		 * variable), it must have a size of nbVariables+1
+		 */
+		public Enumerator(Node node, byte[] values) {
+			this.node = node;
+			this.values = values;
+		}
+
+		/**
+		 * @return false if there is no model left
+		 */
+		public boolean next() {
+			if (node instanceof Leaf) {
+				if (node.count.signum() != 0 && node.count.compareTo(BigInteger.ONE) != 0)
+					throw new IllegalStateException("next(): a counted node cannot be enumerated");
+				boolean first = !started;
+				started = true;
+				return first && node.count.signum() != 0;
+			}
+			if (node instanceof Decision)
+				return nextDecision((Decision) node);
+			return nextAnd((And) node);
+		}
+
+		private boolean nextDecision(Decision d) {
+			if (!started) {
+				started = true;
+				onLow = false;
+				branch = new Enumerator(d.high, values);
+			}
+			while (true) {
+				if (branch.next()) {
+					values[d.variable] = (byte) (onLow ? -1 : 1);
+					return true;
+				}
+				if (onLow)
+					return false;
+				onLow = true;
+				branch = new Enumerator(d.low, values);
+			}
+		}
+
+		private boolean nextAnd(And a) {
+			if (!started) {
+				started = true;
+				children = new Enumerator[a.children.length];
+				for (int i = 0; i < children.length; i++) {
+					children[i] = new Enumerator(a.children[i], values);
+					if (!children[i].next())
+						return false;
+				}
+				for (int literal : a.literals)
+					values[Math.abs(literal)] = (byte) (literal > 0 ? 1 : -1);
+				freeCounter = 0;
+				freeCounterBig = null;
+				writeFree(a);
+				return true;
+			}
+			// Odometer: the free variables change first, then the last child
+			if (incrementFree(a)) {
+				writeFree(a);
+				return true;
+			}
+			writeFree(a); // Back to all false
+			for (int i = children.length - 1; i >= 0; i--) {
+				if (children[i].next())
+					return true;
+				children[i] = new Enumerator(a.children[i], values);
+				children[i].next();
+			}
+			return false;
+		}
+
+		/** @return false when the free variables are back to all false */
+		private boolean incrementFree(And a) {
+			if (a.free.length < 63) {
+				freeCounter++;
+				if (freeCounter == (1L << a.free.length)) {
+					freeCounter = 0;
+					return false;
+				}
+				return true;
+			}
+			if (freeCounterBig == null)
+				freeCounterBig = BigInteger.valueOf(freeCounter);
+			freeCounterBig = freeCounterBig.add(BigInteger.ONE);
+			if (freeCounterBig.bitLength() > a.free.length) {
+				freeCounterBig = BigInteger.ZERO;
+				return false;
+			}
+			return true;
+		}
+
+		private void writeFree(And a) {
+			for (int i = 0; i < a.free.length; i++) {
+				boolean bit = (freeCounterBig != null) ? freeCounterBig.testBit(i)
+						: ((freeCounter >>> i) & 1) != 0;
+				values[a.free[i]] = (byte) (bit ? 1 : -1);
+			}
+		}
+	}
+}
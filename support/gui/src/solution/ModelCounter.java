@@ -0,0 +1,259 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package solution;
+
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.TimeoutException;
+
+import entity.SymbolTable;
+import translation.CNF;
+
+/**
+ * Counts the models of a CNF as the ModelList would show them, without
+ * creating any Model: a private SAT4J solver enumerates the models and only
+ * a running count is kept. Two models that only differ on hidden literals
+ * ('&45' literals, issue #88) are counted once, so the blocking clauses
+ * only contain the visible literals. The visible literals that are in no
+ * clause are not enumerated: each of them doubles the count.
+ *
+ * The solver of the results view is not used, so counting does not change
+ * the models it gives.
+ *
+ * @author Maël
+ */
+public class ModelCounter {
+	/**
+	 * Told (from the counting thread) about the number of models counted so
+	 * far.
+	 */
+	public interface ProgressListener {
+		void progress(long modelsCounted);
+	}
+
+	/** The listener is called at most every PROGRESS_INTERVAL ms */
+	private final static long PROGRESS_INTERVAL = 200;
+
+	private final CNF cnf;
+	private final SymbolTable literalsMap;
+	private final Map<String, Boolean> pins;
+	private volatile ISolver solver;
+	private volatile ApproximateCounter approximateCounter;
+	private volatile boolean cancelled = false;
+	private boolean complete = false;
+
+	/**
+	 * @param cnf the clauses given by TranslatorSAT
+	 * @param literalsMap the "literals map" ("table de correspondance")
+	 */
+	public ModelCounter(CNF cnf, SymbolTable literalsMap) {
+		this(cnf, literalsMap, Collections.<String, Boolean> emptyMap());
+	}
+
+	/**
+	 * @param pins only the models that give these values to these literals
+	 * (by name) are counted; the names that are not in the problem are
+	 * ignored
+	 */
+	public ModelCounter(CNF cnf, SymbolTable literalsMap, Map<String, Boolean> pins) {
+		this.cnf = cnf;
+		this.literalsMap = literalsMap;
+		this.pins = pins;
+	}
+
+	/**
+	 * @param limit the counting stops when limit models have been counted
+	 * (0 for no limit)
+	 * @param timeout the time (in milliseconds) given to the solver for
+	 * finding each model
+	 * @param listener can be null
+	 * @return the number of models, or limit if there are at least limit
+	 * models (Long.MAX_VALUE if the count does not fit in a long)
+	 * @throws SolverExecutionException if the solver reached its timeout
+	 * @throws InterruptedIOException if cancel() has been called or if the
+	 * thread has been interrupted
+	 */
+	public long count(long limit, long timeout, ProgressListener listener)
+			throws SolverExecutionException, InterruptedIOException {
+		final int nbCodes = cnf.getNbVariables();
+		ISolver s = SolverFactory.newDefault();
+		s.newVar(nbCodes);
+		s.setExpectedNumberOfClauses(cnf.getNbClauses() + pins.size());
+		solver = s;
+		complete = false;
+		boolean[] constrained = new boolean[nbCodes + 1];
+		try {
+			VecInt clause = new VecInt();
+			for (int literal : cnf.getLiterals()) {
+				if (literal != 0) {
+					clause.push(literal);
+					constrained[Math.abs(literal)] = true;
+				} else {
+					s.addClause(clause);
+					clause.clear();
+				}
+			}
+			Map<Integer, Boolean> pinned = SolverSAT4J.pinnedCodes(pins,
+					literalsMap, cnf.getNbVariables());
+			for (Map.Entry<Integer, Boolean> pin : pinned.entrySet()) {
+				int code = pin.getKey();
+				s.addClause(new VecInt(new int[] {pin.getValue() ? code : -code}));
+				constrained[code] = true;
+			}
+		} catch (ContradictionException e) {
+			complete = true;
+			return 0;
+		}
+
+		// Each free visible literal doubles the count; the constrained
+		// visible ones go in the blocking clauses
+		int nbFree = 0;
+		int nbBlocked = 0;
+		int[] blocked = new int[nbCodes];
+		for (int code = 1; code <= nbCodes; code++) {
+			if (literalsMap != null && literalsMap.isHidden(code))
+				continue;
+			if (constrained[code])
+				blocked[nbBlocked++] = code;
+			else
+				nbFree++;
+		}
+		long modelsPerSolution = (nbFree >= 63) ? Long.MAX_VALUE : 1L << nbFree;
+
+		long count = 0;
+		long lastProgress = System.currentTimeMillis();
+		boolean[] value = new boolean[nbCodes + 1];
+		s.setTimeoutMs(timeout);
+		try {
+			while (true) {
+				if (cancelled || Thread.currentThread().isInterrupted())
+					throw new InterruptedIOException("count(): the counting has been cancelled");
+				SolverSAT4J.resetConflictStatistics(s);
+				if (!s.isSatisfiable()) {
+					complete = true;
+					break;
+				}
+				count = (count > Long.MAX_VALUE - modelsPerSolution) ? Long.MAX_VALUE : count + modelsPerSolution;
+				if (limit > 0 && count >= limit) {
+					count = limit;
+					break;
+				}
+				if (listener != null && System.currentTimeMillis() - lastProgress > PROGRESS_INTERVAL) {
+					lastProgress = System.currentTimeMillis();
+					listener.progress(count);
+				}
+				if (nbBlocked == 0) {
+					complete = true; // Only one solution: every visible literal is free
+					break;
+				}
+				for (int literal : s.model()) {
+					value[Math.abs(literal)] = literal > 0;
+				}
+				VecInt blockingClause = new VecInt(nbBlocked);
+				for (int i = 0; i < nbBlocked; i++) {
+					int code = blocked[i];
+					blockingClause.push(value[code] ? -code : code);
+				}
+				try {
+					s.addBlockingClause(blockingClause);
+				} catch (ContradictionException e) {
+					complete = true; // This model was the last one
+					break;
+				}
+			}
+		} catch (TimeoutException e) {
+			if (cancelled)
+				throw new InterruptedIOException("count(): the counting has been cancelled");
+			throw new SolverExecutionException("count(): the solver reached its timeout ("
+					+ timeout + "ms) after " + count + " models");
+		} finally {
+			solver = null;
+		}
+		if (listener != null)
+			listener.progress(count);
+		System.out.println("count(): " + count + " models" + (complete ? "" : " (limit reached)"));
+		return count;
+	}
+
+	/**
+	 * Estimates the number of models when there are too many models to count
+	 * them (see ApproximateCounter): the rounds run on every processor.
+	 * @param epsilon the tolerance (the estimate is between count/(1+epsilon)
+	 * and count*(1+epsilon))
+	 * @param delta the estimate is outside of this interval with a
+	 * probability of at most delta
+	 * @param timeout the time (in milliseconds) given to each SAT call
+	 * @throws SolverExecutionException if a SAT call reached its timeout
+	 * @throws InterruptedIOException if cancel() has been called or if the
+	 * thread has been interrupted
+	 */
+	public ApproximateCounter.Estimate estimate(double epsilon, double delta, long timeout)
+			throws SolverExecutionException, InterruptedIOException {
+		Map<Integer, Boolean> pinned = SolverSAT4J.pinnedCodes(pins, literalsMap, cnf.getNbVariables());
+		int[] units = new int[pinned.size()];
+		int i = 0;
+		for (Map.Entry<Integer, Boolean> pin : pinned.entrySet()) {
+			units[i++] = pin.getValue() ? pin.getKey() : -pin.getKey();
+		}
+		approximateCounter = new ApproximateCounter(cnf, literalsMap, units);
+		if (cancelled)
+			approximateCounter.cancel();
+		try {
+			return approximateCounter.estimate(epsilon, delta, timeout,
+					Runtime.getRuntime().availableProcessors());
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("estimate(): the estimation has been cancelled");
+		} finally {
+			approximateCounter = null;
+		}
+	}
+
+	/**
+	 * @return true if the last count() has counted every model (the limit
+	 * was not reached)
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * Stops count() or estimate() (from another thread): they throw
+	 * InterruptedIOException.
+	 */
+	public void cancel() {
+		cancelled = true;
+		ISolver s = solver;
+		if (s != null)
+			s.expireTimeout();
+		ApproximateCounter a = approximateCounter;
+		if (a != null)
+			a.cancel();
+	}
+}
@@ -0,0 +1,363 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package solution;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import entity.Literal;
+import entity.Model;
+
+/**
+ * Writes models into a stream, one model after the other, without building
+ * the whole output in memory. The models are given by an iterator (that can
+ * be a ModelListIterator, which retrieves new models from the solver while
+ * the previous ones are being written): the calling thread consumes the
+ * iterator and puts the models into a bounded queue, and a writer thread
+ * encodes them. If the writer is slower, the calling thread waits (the
+ * queue holds at most QUEUE_SIZE models).
+ *
+ * The formats are:
+ * - CSV: a header line with the names of the (visible) literals, then one
+ *   line per model with the values (1/0 for SAT, the value for SMT/QBF, ?
+ *   if unknown);
+ * - JSONL (JSON Lines): one JSON object per model, e.g. {"a":true,"b":false}
+ *   (a number or null for SMT/QBF);
+ * - BINARY: the int 0x544D444C ("TMDL"), the version (int, 1), the kind of
+ *   models (byte, 0 for SAT, 1 for SMT/QBF), the number N of literals (int),
+ *   the N names (DataOutput.writeUTF), then for each model either N bits
+ *   packed in (N+7)/8 bytes (bit i%8 of byte i/8 is the value of the literal
+ *   i) or N doubles (NaN if unknown), until the end of the file.
+ * All the models must have the same literals as the first one (which is the
+ * case for the models of a given problem).
+ *
+ * @author Maël
+ */
+public class ModelExporter {
+	public enum Format {
+		CSV, JSONL, BINARY;
+
+		/**
+		 * @return the format matching the extension of fileName (.csv, .jsonl
+		 * or .bin), CSV by default
+		 */
+		public static Format fromFileName(String fileName) {
+			String name = fileName.toLowerCase();
+			if (name.endsWith(".jsonl") || name.endsWith(".json"))
+				return JSONL;
+			if (name.endsWith(".bin"))
+				return BINARY;
+			return CSV;
+		}
+	}
+
+	/**
+	 * Told (from the writer thread) about the number of models written so far.
+	 */
+	public interface ProgressListener {
+		void progress(long modelsWritten);
+	}
+
+	private final static int QUEUE_SIZE = 256;
+	/** The listener is called at most every PROGRESS_INTERVAL ms */
+	private final static long PROGRESS_INTERVAL = 200;
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+	private final static int BINARY_MAGIC = 0x544D444C; // "TMDL"
+	private final static int BINARY_VERSION = 1;
+	/** Put in the queue after the last model (compared by identity) */
+	private final static Model END = new Model(null, new double[0]);
+
+	private final OutputStream out;
+	private final Format format;
+	private ProgressListener listener = null;
+
+	private final BlockingQueue<Model> queue = new ArrayBlockingQueue<Model>(QUEUE_SIZE);
+	private volatile IOException writeError = null;
+	private volatile long written = 0;
+
+	/**
+	 * @param out the stream (closed by export())
+	 * @param format the format
+	 */
+	public ModelExporter(OutputStream out, Format format) {
+		this.out = out;
+		this.format = format;
+	}
+
+	public void setProgressListener(ProgressListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Writes the models given by the iterator until it has no more model or
+	 * until limit models have been written. Blocks until everything has been
+	 * written. Interrupting the calling thread stops the export.
+	 * @param models the models
+	 * @param limit the maximum number of models (-1 for no limit)
+	 * @return the number of models written
+	 * @throws InterruptedIOException if the calling thread has been
+	 * interrupted (what has been written so far is kept)
+	 * @throws IOException if the models could not be written
+	 */
+	public long export(Iterator<Model> models, long limit) throws IOException {
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					write();
+				} catch (IOException e) {
+					writeError = e;
+				} catch (InterruptedException e) {
+					writeError = new InterruptedIOException("export(): interrupted");
+				} finally {
+					try {
+						out.close();
+					} catch (IOException e) {
+					}
+				}
+			}
+		}, "touist-export");
+		writer.setDaemon(true);
+		writer.start();
+		long given = 0;
+		try {
+			while ((limit < 0 || given < limit) && models.hasNext()) {
+				Model m = models.next();
+				while (!queue.offer(m, 100, TimeUnit.MILLISECONDS)) {
+					if (!writer.isAlive()) // The writer failed
+						throw writerFailure();
+				}
+				given++;
+			}
+			while (!queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+				if (!writer.isAlive())
+					throw writerFailure();
+			}
+			writer.join();
+		} catch (InterruptedException e) {
+			writer.interrupt();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("export(): interrupted after "
+					+ written + " models");
+		}
+		if (writeError != null)
+			throw writeError;
+		return written;
+	}
+
+	private IOException writerFailure() {
+		return (writeError != null) ? writeError
+				: new IOException("export(): the writer thread stopped");
+	}
+
+	/**
+	 * Writer thread.
+	 */
+	private void write() throws IOException, InterruptedException {
+		Model m = queue.take();
+		if (m == END) {
+			out.flush();
+			return;
+		}
+		List<String> names = new ArrayList<String>();
+		for (Literal literal : m) {
+			names.add(literal.getLiteral());
+		}
+		Encoder encoder;
+		switch (format) {
+		case JSONL:
+			encoder = new JsonLinesEncoder(names);
+			break;
+		case BINARY:
+			encoder = new BinaryEncoder(names, m.isBoolean());
+			break;
+		default:
+			encoder = new CsvEncoder(names);
+		}
+		long lastProgress = System.currentTimeMillis();
+		for (; m != END; m = queue.take()) {
+			encoder.write(m);
+			written++;
+			if (listener != null && System.currentTimeMillis() - lastProgress > PROGRESS_INTERVAL) {
+				lastProgress = System.currentTimeMillis();
+				listener.progress(written);
+			}
+		}
+		encoder.finish();
+		if (listener != null)
+			listener.progress(written);
+	}
+
+	private interface Encoder {
+		void write(Model m) throws IOException;
+		void finish() throws IOException;
+	}
+
+	private class CsvEncoder implements Encoder {
+		private final Writer w = new BufferedWriter(new OutputStreamWriter(out, UTF8), 1 << 16);
+
+		CsvEncoder(List<String> names) throws IOException {
+			boolean first = true;
+			for (String name : names) {
+				if (!first)
+					w.write(',');
+				w.write(csvField(name));
+				first = false;
+			}
+			w.write('\n');
+		}
+
+		@Override
+		public void write(Model m) throws IOException {
+			boolean first = true;
+			for (Literal literal : m) {
+				if (!first)
+					w.write(',');
+				String value = literal.getArithmetic_value();
+				w.write(value == null ? (literal.isLiteral_positivity() ? "1" : "0") : value);
+				first = false;
+			}
+			w.write('\n');
+		}
+
+		@Override
+		public void finish() throws IOException {
+			w.flush();
+		}
+
+		private String csvField(String s) {
+			if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0)
+				return s;
+			return '"' + s.replace("\"", "\"\"") + '"';
+		}
+	}
+
+	private class JsonLinesEncoder implements Encoder {
+		private final Writer w = new BufferedWriter(new OutputStreamWriter(out, UTF8), 1 << 16);
+		/** The names already quoted and escaped, followed by ':' */
+		private final String[] keys;
+
+		JsonLinesEncoder(List<String> names) {
+			keys = new String[names.size()];
+			for (int i = 0; i < keys.length; i++) {
+				keys[i] = jsonString(names.get(i)) + ":";
+			}
+		}
+
+		@Override
+		public void write(Model m) throws IOException {
+			w.write('{');
+			int i = 0;
+			for (Literal literal : m) {
+				if (i > 0)
+					w.write(',');
+				w.write(i < keys.length ? keys[i] : jsonString(literal.getLiteral()) + ":");
+				String value = literal.getArithmetic_value();
+				if (value == null)
+					w.write(literal.isLiteral_positivity() ? "true" : "false");
+				else
+					w.write(value.equals("?") ? "null" : value);
+				i++;
+			}
+			w.write("}\n");
+		}
+
+		@Override
+		public void finish() throws IOException {
+			w.flush();
+		}
+
+		private String jsonString(String s) {
+			StringBuilder sb = new StringBuilder("\"");
+			for (int i = 0; i < s.length(); i++) {
+				char c = s.charAt(i);
+				if (c == '"' || c == '\\')
+					sb.append('\\').append(c);
+				else if (c < 0x20)
+					sb.append(String.format("\\u%04x", (int) c));
+				else
+					sb.append(c);
+			}
+			return sb.append('"').toString();
+		}
+	}
+
+	private class BinaryEncoder implements Encoder {
+		private final DataOutputStream d = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+		private final boolean isBoolean;
+		private final byte[] bits;
+
+		BinaryEncoder(List<String> names, boolean isBoolean) throws IOException {
+			this.isBoolean = isBoolean;
+			this.bits = new byte[(names.size() + 7) / 8];
+			d.writeInt(BINARY_MAGIC);
+			d.writeInt(BINARY_VERSION);
+			d.writeByte(isBoolean ? 0 : 1);
+			d.writeInt(names.size());
+			for (String name : names) {
+				d.writeUTF(name);
+			}
+		}
+
+		@Override
+		public void write(Model m) throws IOException {
+			if (isBoolean) {
+				Arrays.fill(bits, (byte) 0);
+				int i = 0;
+				for (int code = 1; code <= m.getNbCodes() && i < 8 * bits.length; code++) {
+					if (m.isHidden(code))
+						continue;
+					if (m.isTrue(code))
+						bits[i >> 3] |= 1 << (i & 7);
+					i++;
+				}
+				d.write(bits);
+			} else {
+				for (int code = 1; code <= m.getNbCodes(); code++) {
+					if (!m.isHidden(code))
+						d.writeDouble(m.getValue(code));
+				}
+			}
+		}
+
+		@Override
+		public void finish() throws IOException {
+			d.flush();
+		}
+	}
+}
@@ -23,23 +23,43 @@
 
 package solution;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.ListIterator;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
 
 import entity.Model;
+import entity.ModelSet;
 
 /**
  * This class is the Model container. An instance of Models allows the user to
  * iterate (with iterate()) on the different models. When using
  * ModelsIterator.hasNext(), the Solver.nextModel() will be called and the next
  * model will be automatically retrieved.
+ *
+ * The models can also be retrieved in advance by a background thread (see
+ * startPrefetching()) so that the user does not wait for the solver when
+ * clicking on "Next".
  */
 public class ModelList implements Iterable<Model> {
-	private List<Model> models = new ArrayList<Model>();
+	private ModelStore models = new ModelStore(); // Spills to disk, see ModelStore
+	private ModelSet alreadyPresent = new ModelSet(models); // Shared by the iterators
 	private Solver solverInterface; // The solver that created this inst. of
 									// Models
 
+	/** Number of models retrieved in advance by default */
+	public final static int DEFAULT_PREFETCH = 64;
+	private Thread prefetcher = null;
+	private volatile boolean prefetching = false;
+	/**
+	 * Serializes the calls to the solver; the models are read with the
+	 * (short) lock of ModelStore only, so the results view does not wait for
+	 * a model that is being computed
+	 */
+	private final Object fetchLock = new Object();
+	private volatile boolean closed = false;
+	/** The greatest index given by an iterator (guarded by 'this') */
+	private int highestConsumed = -1;
+
 	/**
 	 * Create an instance of Models; you need to pass the Solver instance that
 	 * created this instance of Models because Models will call
@@ -59,15 +79,181 @@ public class ModelList implements Iterable<Model> {
 	 * list is built "on the fly", when the user uses ModelsIterator.hasNext().
 	 */
 	@Override
-	public ListIterator<Model> iterator() {
-		return new ModelListIterator(models, solverInterface);
+	public ModelListIterator iterator() {
+		return new ModelListIterator(this, models);
+	}
+
+	/**
+	 * ONLY used by ModelListIterator and by the prefetching thread: asks the
+	 * solver for a new model (skipping the duplicates) and adds it to the
+	 * models.
+	 * @param position the index of the last model known by the caller
+	 * @return false if there is no more model
+	 */
+	boolean retrieveNextModel(int position) {
+		if (position < models.size() - 1)
+			return true;
+		// Several threads (e.g. the results view, an export and the
+		// prefetching thread) can ask for a new model at the same time
+		synchronized (fetchLock) {
+			if (closed)
+				return false;
+			if (position < models.size() - 1) // Computed while we waited
+				return true;
+			Model nextModel = null;
+			// Added for filtering '&45' literals: the models that only differ
+			// on hidden literals are skipped (a loop, as there can be many).
+			// The in-process solvers only enumerate the visible models
+			// (projected blocking clauses), so it only loops for the
+			// external solvers
+			do {
+				try {
+					nextModel = solverInterface.nextModel();
+				} catch (IOException e) {
+					System.err.println("hasNext(): I/O exception: "+e.getMessage());
+					return false;
+				} catch (SolverExecutionException e) {
+					System.err.println("hasNext(): "+e.getMessage());
+					nextModel = null;
+				}
+			} while (nextModel != null && alreadyPresent.contains(nextModel));
+
+			if (nextModel == null) { // No models left
+				solverInterface.close();
+				System.out.println("hasNext(): there is no more models");
+				return false;
+			}
+			models.add(nextModel);
+			alreadyPresent.add(nextModel, models.size() - 1);
+			return true;
+		}
+	}
+
+	/**
+	 * ONLY used by ModelListIterator: tells the prefetching thread that the
+	 * model number index has been shown.
+	 */
+	synchronized void consumed(int index) {
+		if (index > highestConsumed) {
+			highestConsumed = index;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Starts a thread that retrieves the next models in advance, staying at
+	 * most ahead models in front of the iterators (it waits when it is too
+	 * far ahead). Does nothing if the thread is already running.
+	 * Can be disabled with -Dtouist.prefetchModels=false.
+	 * @param ahead the maximum number of models retrieved in advance
+	 */
+	public synchronized void startPrefetching(final int ahead) {
+		if (prefetcher != null || "false".equals(System.getProperty("touist.prefetchModels")))
+			return;
+		prefetching = true;
+		prefetcher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (prefetching) {
+						synchronized (ModelList.this) {
+							while (prefetching && models.size() - 1 - highestConsumed >= ahead)
+								ModelList.this.wait();
+						}
+						if (!prefetching || !retrieveNextModel(models.size() - 1))
+							break;
+					}
+				} catch (InterruptedException e) {
+					// stopPrefetching() has been called
+				}
+			}
+		}, "touist-prefetch");
+		prefetcher.setDaemon(true);
+		prefetcher.start();
 	}
 
 	/**
-	 * Exports the models already computed.
+	 * Stops the prefetching thread (e.g. when the results view is closed).
+	 * A model that is being computed is still added to the models.
+	 */
+	public synchronized void stopPrefetching() {
+		prefetching = false;
+		if (prefetcher != null) {
+			prefetcher.interrupt();
+			prefetcher = null;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Frees the models (and deletes the file where the older ones were
+	 * stored). The list cannot be used anymore.
+	 */
+	public void close() {
+		closed = true;
+		stopPrefetching();
+		// Stops a search that could be running (the fetch lock is held)
+		solverInterface.close();
+		synchronized (fetchLock) {
+			models.close();
+		}
+	}
+
+	/**
+	 * Exports the models already computed. The format is given by the
+	 * extension of fileName (see ModelExporter.Format.fromFileName()).
 	 * @param fileName
+	 * @return the number of models written
+	 * @throws IOException
 	 */
-	public void exportTo(String fileName) {
-		// TODO increment #2
+	public long exportTo(String fileName) throws IOException {
+		return exportTo(fileName, ModelExporter.Format.fromFileName(fileName),
+				false, null);
+	}
+
+	/**
+	 * Exports the models, streaming them to the file (see ModelExporter).
+	 * @param fileName
+	 * @param format
+	 * @param continueEnumerating if true, the models that have not been
+	 * computed yet are asked to the solver and written as they come
+	 * @param listener told about the number of models written (can be null)
+	 * @return the number of models written
+	 * @throws IOException (InterruptedIOException if the thread has been
+	 * interrupted, the file then holds the models written so far)
+	 */
+	public long exportTo(String fileName, ModelExporter.Format format,
+			boolean continueEnumerating, ModelExporter.ProgressListener listener)
+			throws IOException {
+		ModelExporter exporter = new ModelExporter(
+				new FileOutputStream(fileName), format);
+		exporter.setProgressListener(listener);
+		Iterator<Model> it;
+		if (continueEnumerating) {
+			it = iterator();
+		} else {
+			final int computed = models.size();
+			it = new Iterator<Model>() {
+				private int next = 0;
+
+				@Override
+				public boolean hasNext() {
+					return next < computed;
+				}
+
+				@Override
+				public Model next() {
+					return models.get(next++);
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+		long written = exporter.export(it, -1);
+		System.out.println("exportTo(): " + written + " models written to '" + fileName + "'");
+		return written;
 	}
 }
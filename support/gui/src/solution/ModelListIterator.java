@@ -23,71 +23,68 @@
 
 package solution;
 
-import java.io.IOException;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.NoSuchElementException;
 
 import entity.Model;
-import entity.LexicographicalTree;
-import java.util.Set;
 
 public class ModelListIterator implements ListIterator<Model> {
-	private Solver solverInterface;
+	private ModelList owner;
 	private List<Model> models;
-        private LexicographicalTree alreadyPresent;
 	private int currentPosition;
 
 	/**
+	 * @param owner the ModelList that retrieves the new models
 	 * @param models The collection that comes from Models
-	 * @param solverInterface The instance of Solver that produces the new
-	 * Model-s
 	 */
-	public ModelListIterator(List<Model> models, Solver solverInterface) {
+	ModelListIterator(ModelList owner, List<Model> models) {
 		super();
+		this.owner = owner;
 		this.models = models;
-		this.solverInterface = solverInterface;
 		currentPosition = -1;
-                this.alreadyPresent = new LexicographicalTree();
 	}
 
 	@Override
 	public boolean hasNext() {
-		boolean hasNext = false;
-		if (currentPosition == models.size() - 1) { // Need to get a new model?
-			Model nextModel = null;
-			try {
-				nextModel = solverInterface.nextModel();
-			} catch (IOException e) {
-				System.err.println("hasNext(): I/O exception: "+e.getMessage());
-				return false;
-			} catch (SolverExecutionException e) {
-				System.err.println("hasNext(): "+e.getMessage());
-			}
-			
-			// Added for filtering '&45' literals
-			if(nextModel != null && alreadyPresent.contains(nextModel)) {
-				return hasNext();
-			}
-
-			if (nextModel == null) { // No models left
-				solverInterface.close();
-				hasNext = false;
-				System.out.println("hasNext(): there is no more models");
-			} else {
-				hasNext = true;
-				models.add(nextModel);
-                                alreadyPresent.add(nextModel);
-			}
-		} else { // Models have already been retrieved (e.g. because of
-					// previous())
-			hasNext = true;
+		if (currentPosition < models.size() - 1) {
+			// Models have already been retrieved (e.g. because of previous(),
+			// by another iterator or by the prefetching thread)
+			return true;
 		}
-		return hasNext;
+		return owner.retrieveNextModel(currentPosition);
 	}
 
 	@Override
 	public Model next() {
-		return models.get(++currentPosition);
+		Model m = models.get(++currentPosition);
+		owner.consumed(currentPosition);
+		return m;
+	}
+
+	/**
+	 * Moves the iterator to the model number index (the models up to index
+	 * are retrieved from the solver if needed).
+	 * @param index the index of the model (0 is the first model)
+	 * @return the model
+	 * @throws NoSuchElementException if there are less than index+1 models
+	 */
+	public Model jumpTo(int index) {
+		if (index < 0)
+			throw new NoSuchElementException("jumpTo(): wrong index " + index);
+		if (index < models.size()) {
+			currentPosition = index;
+			owner.consumed(index);
+			return models.get(index);
+		}
+		currentPosition = models.size() - 1;
+		while (currentPosition < index) {
+			if (!hasNext())
+				throw new NoSuchElementException("jumpTo(): there are only "
+						+ models.size() + " models");
+			next();
+		}
+		return models.get(currentPosition);
 	}
 
 	@Override
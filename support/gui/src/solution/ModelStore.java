@@ -0,0 +1,298 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package solution;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import entity.Model;
+import entity.SymbolTable;
+
+/**
+ * The list of the models retrieved so far, used by ModelList. Only the last
+ * HEAP_MODELS models are kept in the heap: the older ones are encoded (see
+ * Model.getPolarity()) and appended to a file mapped in memory, so that
+ * previous() and the jumps (ModelListIterator.jumpTo()) work with millions of
+ * models. A model read back from the file is decoded on the fly.
+ *
+ * The file is divided in segments of SEGMENT_BYTES (each one mapped
+ * separately); a model is never split between two segments. It is created
+ * in the temp directory when the first model is spilled and deleted by
+ * close().
+ *
+ * Only add() is supported: the models cannot be modified once retrieved.
+ *
+ * @author Maël
+ */
+public class ModelStore extends AbstractList<Model> {
+	/** Number of (most recent) models kept in the heap */
+	public final static int HEAP_MODELS = 4096;
+	private final static long SEGMENT_BYTES = 64 << 20;
+	private final static byte POLARITY = 0;
+	private final static byte VALUES = 1;
+
+	private final int heapModels;
+	/**
+	 * The most recent models (the last ones of the list), in a ring buffer:
+	 * the i-th one is heap[(heapHead + i) % heap.length]
+	 */
+	private Model[] heap;
+	private int heapHead = 0;
+	private int heapSize = 0;
+	private int spilled = 0;
+	/** For models 0..spilled-1: segment index (high int) and position (low int) */
+	private long[] locations = new long[1024];
+
+	/**
+	 * The symbol tables are not written in the file, only their index. The
+	 * tables that have the same names share their index (SolverSMT builds
+	 * a new table for each model), so that only one of them stays in memory
+	 */
+	private final List<SymbolTable> symbolTables = new ArrayList<SymbolTable>();
+	private final Map<SymbolTable, Integer> symbolTableIds =
+			new IdentityHashMap<SymbolTable, Integer>();
+	/** The indexes of symbolTables by SymbolTable.namesHashCode() */
+	private final Map<Integer, List<Integer>> symbolTablesByHash =
+			new HashMap<Integer, List<Integer>>();
+
+	private File file = null;
+	private RandomAccessFile raf = null;
+	private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+	private long fileLength = 0;
+	/**
+	 * Set if the file could not be written: the next models stay in the heap
+	 * (in notSpilled, between the spilled models and the recent ones)
+	 */
+	private boolean spillDisabled = false;
+	private final List<Model> notSpilled = new ArrayList<Model>();
+
+	public ModelStore() {
+		this(HEAP_MODELS);
+	}
+
+	/**
+	 * @param heapModels the number of most recent models kept in the heap
+	 */
+	public ModelStore(int heapModels) {
+		this.heapModels = Math.max(1, heapModels);
+		// Full, the ring buffer is exactly heapModels long
+		this.heap = new Model[Math.min(16, this.heapModels)];
+	}
+
+	@Override
+	public synchronized int size() {
+		return notSpilled.size() + spilled + heapSize;
+	}
+
+	@Override
+	public synchronized Model get(int index) {
+		if (index < 0 || index >= size())
+			throw new IndexOutOfBoundsException("get(): " + index + " (size " + size() + ")");
+		if (index < spilled)
+			return read(locations[index]);
+		index -= spilled;
+		if (index < notSpilled.size())
+			return notSpilled.get(index);
+		index -= notSpilled.size();
+		return heap[(heapHead + index) % heap.length];
+	}
+
+	@Override
+	public synchronized boolean add(Model m) {
+		if (heapSize == heapModels) { // The oldest one leaves the heap
+			Model oldest = heap[heapHead];
+			heap[heapHead] = m;
+			heapHead = (heapHead + 1) % heap.length;
+			if (spillDisabled || !spill(oldest))
+				notSpilled.add(oldest);
+		} else {
+			if (heapSize == heap.length) { // Grows up to heapModels
+				Model[] grown = new Model[Math.min(2 * heap.length, heapModels)];
+				for (int i = 0; i < heapSize; i++)
+					grown[i] = heap[(heapHead + i) % heap.length];
+				heap = grown;
+				heapHead = 0;
+			}
+			heap[(heapHead + heapSize++) % heap.length] = m;
+		}
+		modCount++;
+		return true;
+	}
+
+	/**
+	 * Deletes the file (the list is empty afterwards).
+	 */
+	public synchronized void close() {
+		Arrays.fill(heap, null);
+		heapHead = 0;
+		heapSize = 0;
+		notSpilled.clear();
+		spilled = 0;
+		segments.clear();
+		if (raf != null) {
+			try {
+				raf.close();
+			} catch (IOException e) {
+			}
+			raf = null;
+		}
+		if (file != null) {
+			file.delete(); // Can fail on Windows while the segments are mapped
+			file = null;
+		}
+	}
+
+	private boolean spill(Model m) {
+		try {
+			if (raf == null) {
+				file = File.createTempFile("models", ".bin",
+						new File(touist.TouIST.getWhereToSaveTemp()));
+				file.deleteOnExit();
+				raf = new RandomAccessFile(file, "rw");
+				System.out.println("spill(): older models are stored in '" + file + "'");
+			}
+			int length = 1 + 4 + 4 + (m.isBoolean()
+					? 4 + 8 * m.getPolarity().length
+					: 8 * m.getNbCodes() + 4 + textsLength(m.getValueTexts()));
+			MappedByteBuffer segment = segments.isEmpty() ? null
+					: segments.get(segments.size() - 1);
+			if (segment == null || segment.remaining() < length) {
+				long size = Math.max(SEGMENT_BYTES, length);
+				segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+						fileLength, size);
+				fileLength += size;
+				segments.add(segment);
+			}
+			if (spilled == locations.length)
+				locations = Arrays.copyOf(locations, 2 * spilled);
+			locations[spilled++] = ((long) (segments.size() - 1) << 32) | segment.position();
+			write(segment, m);
+			return true;
+		} catch (IOException e) {
+			System.err.println("spill(): the models will stay in memory: " + e.getMessage());
+			spillDisabled = true;
+			return false;
+		}
+	}
+
+	private void write(ByteBuffer out, Model m) {
+		out.put(m.isBoolean() ? POLARITY : VALUES);
+		out.putInt(symbolTableId(m.getSymbolTable()));
+		out.putInt(m.getNbCodes());
+		if (m.isBoolean()) {
+			long[] polarity = m.getPolarity();
+			out.putInt(polarity.length);
+			for (long word : polarity)
+				out.putLong(word);
+		} else {
+			for (double value : m.getValues())
+				out.putDouble(value);
+			// The exact integers (see Model.getValueText()): code, length, chars
+			String[] texts = m.getValueTexts();
+			int position = out.position();
+			out.putInt(0);
+			int nbTexts = 0;
+			for (int i = 0; texts != null && i < texts.length; i++) {
+				if (texts[i] == null)
+					continue;
+				out.putInt(i);
+				out.putInt(texts[i].length());
+				for (int c = 0; c < texts[i].length(); c++)
+					out.putChar(texts[i].charAt(c));
+				nbTexts++;
+			}
+			out.putInt(position, nbTexts);
+		}
+	}
+
+	private static int textsLength(String[] texts) {
+		int length = 0;
+		for (int i = 0; texts != null && i < texts.length; i++) {
+			if (texts[i] != null)
+				length += 4 + 4 + 2 * texts[i].length();
+		}
+		return length;
+	}
+
+	private Model read(long location) {
+		ByteBuffer in = segments.get((int) (location >>> 32)).duplicate();
+		in.position((int) location);
+		byte kind = in.get();
+		int id = in.getInt();
+		SymbolTable symbols = (id < 0) ? null : symbolTables.get(id);
+		int nbCodes = in.getInt();
+		if (kind == POLARITY) {
+			long[] polarity = new long[in.getInt()];
+			in.asLongBuffer().get(polarity);
+			return new Model(symbols, nbCodes, polarity);
+		}
+		double[] values = new double[nbCodes];
+		in.asDoubleBuffer().get(values);
+		in.position(in.position() + 8 * nbCodes);
+		int nbTexts = in.getInt();
+		String[] texts = (nbTexts == 0) ? null : new String[nbCodes];
+		for (int t = 0; t < nbTexts; t++) {
+			int i = in.getInt();
+			char[] chars = new char[in.getInt()];
+			in.asCharBuffer().get(chars);
+			in.position(in.position() + 2 * chars.length);
+			texts[i] = new String(chars);
+		}
+		return new Model(symbols, values, texts);
+	}
+
+	private int symbolTableId(SymbolTable symbols) {
+		if (symbols == null)
+			return -1;
+		Integer id = symbolTableIds.get(symbols);
+		if (id != null)
+			return id;
+		int hash = symbols.namesHashCode();
+		List<Integer> sameHash = symbolTablesByHash.get(hash);
+		if (sameHash == null) {
+			sameHash = new ArrayList<Integer>(1);
+			symbolTablesByHash.put(hash, sameHash);
+		}
+		for (int known : sameHash) {
+			if (symbolTables.get(known).sameNames(symbols))
+				return known;
+		}
+		id = symbolTables.size();
+		symbolTables.add(symbols);
+		symbolTableIds.put(symbols, id);
+		sameHash.add(id);
+		return id;
+	}
+}
@@ -0,0 +1,248 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package solution;
+
+import java.util.Arrays;
+
+/**
+ * Incremental consistency check of difference constraints "to - from <=
+ * weight" (Cotton and Maler's algorithm): each constraint is an edge
+ * from -> to of the constraint graph, and the constraints are consistent iff
+ * the graph has no negative cycle.
+ *
+ * A potential (a solution of the constraints pushed so far) is kept: when an
+ * edge violates it, only the nodes whose potential must decrease are visited
+ * (Dijkstra on the reduced costs, which are non negative). If the source of
+ * the new edge is reached, the new edge closes a negative cycle: the edge is
+ * not added and the reasons of the edges of the cycle are the explanation.
+ *
+ * The edges are pushed and popped like a stack (backtracking): removing
+ * edges keeps the potential a solution, so pop() costs nothing.
+ *
+ * @author Maël
+ */
+public class NegativeCycleDetector {
+	private final int nbNodes;
+	/** A solution of the constraints of the edges on the stack */
+	private final long[] potential;
+
+	/** The edges on the stack: from[i] -> to[i], with their weight and reason */
+	private int nbEdges = 0;
+	private int[] from = new int[64];
+	private int[] to = new int[64];
+	private long[] weight = new long[64];
+	private int[] reason = new int[64];
+
+	/** Out edges of each node (indices in the stack, in stack order) */
+	private final int[][] out;
+	private final int[] nbOut;
+
+	/** Buffers of the Dijkstra search, reused from one push() to the next */
+	private final long[] distance;
+	private final int[] parentEdge;
+	private final boolean[] settled;
+	private final int[] visited;
+	private int nbVisited;
+	private long[] heapKeys = new long[64];
+	private int[] heapNodes = new int[64];
+	private int heapSize;
+
+	/**
+	 * @param nbNodes the nodes are 0..nbNodes-1
+	 */
+	public NegativeCycleDetector(int nbNodes) {
+		this.nbNodes = nbNodes;
+		this.potential = new long[nbNodes];
+		this.out = new int[nbNodes][];
+		this.nbOut = new int[nbNodes];
+		for (int node = 0; node < nbNodes; node++)
+			out[node] = new int[4];
+		this.distance = new long[nbNodes];
+		Arrays.fill(distance, Long.MAX_VALUE);
+		this.parentEdge = new int[nbNodes];
+		this.settled = new boolean[nbNodes];
+		this.visited = new int[nbNodes];
+	}
+
+	/**
+	 * Adds the constraint "potential(to) - potential(source) <= weight".
+	 * @param reason given back in the explanation of a negative cycle
+	 * @return null if the constraints are still consistent (the edge is
+	 * then on the stack), else the reasons of the edges of a negative cycle
+	 * (the new edge included; the new edge is then not on the stack)
+	 */
+	public int[] push(int source, int target, long weight, int reason) {
+		long violation = potential[source] + weight - potential[target];
+		if (violation < 0) {
+			int[] cycle = repair(source, target, weight, violation, reason);
+			if (cycle != null)
+				return cycle;
+		}
+		addEdge(source, target, weight, reason);
+		return null;
+	}
+
+	/**
+	 * Removes the edges pushed after the first size ones.
+	 */
+	public void pop(int size) {
+		while (nbEdges > size) {
+			nbEdges--;
+			nbOut[from[nbEdges]]--; // The last out edge of its source
+		}
+	}
+
+	/**
+	 * @return the number of edges on the stack
+	 */
+	public int size() {
+		return nbEdges;
+	}
+
+	/**
+	 * @return the value of node in a solution of the constraints on the stack
+	 */
+	public long getPotential(int node) {
+		return potential[node];
+	}
+
+	public int getNbNodes() {
+		return nbNodes;
+	}
+
+	private void addEdge(int source, int target, long w, int why) {
+		if (nbEdges == from.length) {
+			int capacity = 2 * nbEdges;
+			from = Arrays.copyOf(from, capacity);
+			to = Arrays.copyOf(to, capacity);
+			weight = Arrays.copyOf(weight, capacity);
+			reason = Arrays.copyOf(reason, capacity);
+		}
+		from[nbEdges] = source;
+		to[nbEdges] = target;
+		weight[nbEdges] = w;
+		reason[nbEdges] = why;
+		if (nbOut[source] == out[source].length)
+			out[source] = Arrays.copyOf(out[source], 2 * nbOut[source]);
+		out[source][nbOut[source]++] = nbEdges;
+		nbEdges++;
+	}
+
+	/**
+	 * The new edge source -> target lowers the potential of target by
+	 * -violation: the nodes reachable from target are lowered as much as
+	 * needed. distance[node] is the reduced cost of the path target -> node.
+	 * @return the reasons of the negative cycle or null if there is none (the
+	 * potential is then updated)
+	 */
+	private int[] repair(int source, int target, long w, long violation, int why) {
+		int[] cycle = null;
+		nbVisited = 0;
+		heapSize = 0;
+		visit(target, 0, -1);
+		while (heapSize > 0) {
+			int node = heapNodes[0];
+			long d = heapKeys[0];
+			heapPop();
+			if (settled[node] || d != distance[node])
+				continue; // Stale heap entry
+			if (violation + d >= 0)
+				break; // The next nodes keep their potential
+			if (node == source) {
+				cycle = explain(source, target, why);
+				break;
+			}
+			settled[node] = true;
+			for (int i = 0; i < nbOut[node]; i++) {
+				int edge = out[node][i];
+				int next = to[edge];
+				long reduced = potential[node] + weight[edge] - potential[next];
+				if (!settled[next] && d + reduced < distance[next])
+					visit(next, d + reduced, edge);
+			}
+		}
+		// The settled nodes are lowered; the buffers are cleaned for the next call
+		for (int i = 0; i < nbVisited; i++) {
+			int node = visited[i];
+			if (cycle == null && settled[node])
+				potential[node] += violation + distance[node];
+			settled[node] = false;
+			distance[node] = Long.MAX_VALUE;
+		}
+		return cycle;
+	}
+
+	private int[] explain(int source, int target, int why) {
+		int length = 1;
+		for (int node = source; node != target; node = from[parentEdge[node]])
+			length++;
+		int[] cycle = new int[length];
+		cycle[0] = why;
+		int i = 1;
+		for (int node = source; node != target; node = from[parentEdge[node]])
+			cycle[i++] = reason[parentEdge[node]];
+		return cycle;
+	}
+
+	private void visit(int node, long d, int edge) {
+		if (distance[node] == Long.MAX_VALUE)
+			visited[nbVisited++] = node;
+		distance[node] = d;
+		parentEdge[node] = edge;
+		heapPush(node, d);
+	}
+
+	private void heapPush(int node, long key) {
+		if (heapSize == heapKeys.length) {
+			heapKeys = Arrays.copyOf(heapKeys, 2 * heapSize);
+			heapNodes = Arrays.copyOf(heapNodes, 2 * heapSize);
+		}
+		int i = heapSize++;
+		while (i > 0 && heapKeys[(i - 1) / 2] > key) {
+			heapKeys[i] = heapKeys[(i - 1) / 2];
+			heapNodes[i] = heapNodes[(i - 1) / 2];
+			i = (i - 1) / 2;
+		}
+		heapKeys[i] = key;
+		heapNodes[i] = node;
+	}
+
+	private void heapPop() {
+		long key = heapKeys[--heapSize];
+		int node = heapNodes[heapSize];
+		int i = 0;
+		while (2 * i + 1 < heapSize) {
+			int child = 2 * i + 1;
+			if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child])
+				child++;
+			if (heapKeys[child] >= key)
+				break;
+			heapKeys[i] = heapKeys[child];
+			heapNodes[i] = heapNodes[child];
+			i = child;
+		}
+		heapKeys[i] = key;
+		heapNodes[i] = node;
+	}
+}
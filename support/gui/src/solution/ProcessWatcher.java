@@ -0,0 +1,192 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package solution;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Replaces the "while(!stdout.ready()) wait(10)" loops of the solvers. A
+ * reader thread puts every line of the process' stdout into a queue and a
+ * second thread waits for the process to exit; the consumer blocks on the
+ * queue (or on the exit future) and is woken up as soon as a line arrives,
+ * the stdout is closed or the process exits.
+ *
+ * @author Maël
+ */
+public class ProcessWatcher {
+	/** Put in the queue when stdout has been closed (compared by identity) */
+	private static final String END_OF_OUTPUT = new String("<end of output>");
+
+	private final Process process;
+	private final BlockingQueue<String> lines = new LinkedBlockingQueue<String>();
+	private final FutureTask<Integer> exit;
+	private volatile IOException readError = null;
+	private boolean endOfOutput = false;
+
+	/**
+	 * Starts watching the stdout and the exit of the process.
+	 * @param process the process (its stdout must not be read by anybody else)
+	 * @param name used for naming the threads
+	 */
+	public ProcessWatcher(final Process process, String name) {
+		this.process = process;
+		final BufferedReader stdout = new BufferedReader(
+				new InputStreamReader(process.getInputStream()));
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					String line;
+					while ((line = stdout.readLine()) != null) {
+						lines.add(line);
+					}
+				} catch (IOException e) {
+					readError = e;
+				} finally {
+					lines.add(END_OF_OUTPUT);
+				}
+			}
+		}, name + "-stdout");
+		reader.setDaemon(true);
+		reader.start();
+
+		exit = new FutureTask<Integer>(new Callable<Integer>() {
+			@Override
+			public Integer call() throws InterruptedException {
+				return process.waitFor();
+			}
+		});
+		Thread waiter = new Thread(exit, name + "-exit");
+		waiter.setDaemon(true);
+		waiter.start();
+	}
+
+	/**
+	 * Blocks until the next line of stdout is available.
+	 * @param timeout in milliseconds
+	 * @return the line or null if the stdout has been closed (the process has
+	 * exited)
+	 * @throws TimeoutException if nothing came before the timeout
+	 * @throws InterruptedIOException if the calling thread was interrupted
+	 * @throws IOException if stdout could not be read
+	 */
+	public String readLine(long timeout) throws IOException, TimeoutException {
+		if (endOfOutput)
+			return null;
+		String line;
+		try {
+			line = lines.poll(timeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("readLine(): interrupted");
+		}
+		if (line == null)
+			throw new TimeoutException("readLine(): no output after " + timeout + "ms");
+		return checkEndOfOutput(line);
+	}
+
+	/**
+	 * Does not block.
+	 * @return the next line of stdout if it has already been read, null if
+	 * there is no line available yet or if the stdout has been closed
+	 * @throws IOException if stdout could not be read
+	 */
+	public String readLineIfReady() throws IOException {
+		if (endOfOutput)
+			return null;
+		String line = lines.poll();
+		return (line == null) ? null : checkEndOfOutput(line);
+	}
+
+	/**
+	 * Blocks until the stdout has been closed and returns the lines that
+	 * were not read yet.
+	 * @param timeout in milliseconds
+	 * @throws TimeoutException if the stdout was still open after the timeout
+	 */
+	public List<String> readRemainingLines(long timeout) throws IOException,
+			TimeoutException {
+		final long deadline = System.currentTimeMillis() + timeout;
+		List<String> remaining = new ArrayList<String>();
+		String line;
+		while ((line = readLine(Math.max(0, deadline - System.currentTimeMillis()))) != null) {
+			remaining.add(line);
+		}
+		return remaining;
+	}
+
+	private String checkEndOfOutput(String line) throws IOException {
+		if (line != END_OF_OUTPUT)
+			return line;
+		endOfOutput = true;
+		if (readError != null)
+			throw readError;
+		return null;
+	}
+
+	/**
+	 * Blocks until the process exits.
+	 * @param timeout in milliseconds
+	 * @return the exit code of the process
+	 * @throws TimeoutException if the process was still running after the
+	 * timeout
+	 * @throws InterruptedIOException if the calling thread was interrupted
+	 */
+	public int waitFor(long timeout) throws InterruptedIOException,
+			TimeoutException {
+		try {
+			return exit.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("waitFor(): interrupted");
+		} catch (ExecutionException e) {
+			// process.waitFor() can only fail if the waiter was interrupted
+			throw new InterruptedIOException("waitFor(): " + e.getCause());
+		}
+	}
+
+	/**
+	 * @return true if the process is still running. Replaces the isAlive()
+	 * workaround (p.isAlive() is java jre >= 1.8).
+	 */
+	public boolean isAlive() {
+		return !exit.isDone();
+	}
+
+	public Process getProcess() {
+		return process;
+	}
+}
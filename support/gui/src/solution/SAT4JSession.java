@@ -0,0 +1,559 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package solution;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+import org.sat4j.specs.TimeoutException;
+
+import entity.Model;
+import entity.SymbolTable;
+import translation.CNF;
+
+/**
+ * A SAT4J solver that lives as long as the document is edited. Instead of
+ * starting from scratch at each "Solve" (and losing every learned clause),
+ * the session only gives SAT4J the clauses that changed since the previous
+ * translation.
+ *
+ * The codes given by touist change from one translation to another, so the
+ * session gives its own variable to each literal name. Each clause is added
+ * with the negation of a selector variable (C or -s) and the selectors of
+ * the active clauses are given as assumptions: a clause that disappears from
+ * the translation is retired by adding the unit clause -s, which satisfies
+ * it (and every clause learned from it). The new clauses of a translation are
+ * spread in BUCKETS groups (one selector per group) by their hash, so that
+ * removing a clause only retires, and adds again, the other clauses of its
+ * group.
+ *
+ * The blocking clauses of an enumeration also have their own selector,
+ * retired when the next problem is loaded. When the retired clauses become
+ * too many, the SAT4J solver is rebuilt from the active clauses.
+ *
+ * The literals can also be "pinned" to true or false (see newSolver(Map)):
+ * the pins are only more assumptions, so that the problem can be explored
+ * from the results view without translating it again. When the pins make
+ * the problem unsatisfiable, SAT4J tells which of them are in conflict.
+ *
+ * @author Maël
+ */
+public class SAT4JSession {
+	private final static int BUCKETS = 64;
+	/**
+	 * The solver is rebuilt when there are REBUILD_RATIO times more retired
+	 * clauses than active ones (and at least REBUILD_MIN_RETIRED)
+	 */
+	private final static int REBUILD_RATIO = 2;
+	private final static int REBUILD_MIN_RETIRED = 10000;
+
+	/** The clauses that share a selector */
+	private static class Group {
+		final int selector;
+		int size = 0;
+		boolean retired = false;
+
+		Group(int selector) {
+			this.selector = selector;
+		}
+	}
+
+	/** A clause using the variables of the session (sorted, no duplicates) */
+	private static class Clause {
+		final int[] literals;
+		final int hash;
+
+		Clause(int[] literals) {
+			this.literals = literals;
+			this.hash = Arrays.hashCode(literals);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Clause && ((Clause) obj).hash == hash
+					&& Arrays.equals(((Clause) obj).literals, literals);
+		}
+	}
+
+	private ISolver solver;
+	/** The variable of the session given to each literal name */
+	private HashMap<String, Integer> variables;
+	/** The active clauses and their group */
+	private HashMap<Clause, Group> clauses;
+	private List<Group> groups;
+	private int nbRetiredClauses;
+
+	/** The problem being enumerated (see load()) */
+	private volatile SessionSolver current = null;
+	private volatile CNF loadedCNF = null;
+	private SymbolTable literalsMap;
+	private int nbCodes;
+	/** The codes of the blocking clauses (projected enumeration) */
+	private int[] visibleCodes;
+	/** The variable of the session of each code of the current problem */
+	private int[] codeToVariable;
+	private int enumerationSelector;
+	private VecInt assumptions;
+	/** The name of the pinned variables of the current enumeration */
+	private HashMap<Integer, String> pinnedVariables;
+	private volatile boolean done;
+	/**
+	 * Set by nextModel() (before it checks current and done) while it may be
+	 * searching: load() and close() expire the search until it is false
+	 */
+	private volatile boolean searching = false;
+	/** Period of expireTimeout() while a search is stopped (see stopSearch()) */
+	private final static long EXPIRE_PERIOD = 50;
+
+	public SAT4JSession() {
+		reset();
+	}
+
+	private void reset() {
+		solver = SolverFactory.newDefault();
+		variables = new HashMap<String, Integer>();
+		clauses = new HashMap<Clause, Group>();
+		groups = new ArrayList<Group>();
+		nbRetiredClauses = 0;
+		enumerationSelector = 0;
+		loadedCNF = null;
+	}
+
+	/**
+	 * @param cnf the clauses given by TranslatorSAT
+	 * @param literalsMap the "literals map" ("table de correspondance")
+	 * @return a Solver that enumerates the models of cnf using this session.
+	 * Creating a new one stops the enumeration of the previous one.
+	 */
+	public SessionSolver newSolver(CNF cnf, SymbolTable literalsMap) {
+		return new SessionSolver(cnf, literalsMap,
+				Collections.<String, Boolean> emptyMap());
+	}
+
+	/**
+	 * What-if solving: the clauses loaded last are kept (nothing is
+	 * translated or loaded again) and the models must also give the values
+	 * of pins to the literals of pins.
+	 * @param pins the value of each pinned literal (by name); the names that
+	 * are not in the problem are ignored
+	 * @return a Solver that enumerates these models using this session.
+	 * Creating a new one stops the enumeration of the previous one.
+	 * @throws IllegalStateException if no problem has been loaded yet
+	 */
+	public SessionSolver newSolver(Map<String, Boolean> pins) {
+		CNF cnf = loadedCNF; // Written after literalsMap
+		if (cnf == null)
+			throw new IllegalStateException("newSolver(): no problem has been loaded");
+		return new SessionSolver(cnf, literalsMap, pins);
+	}
+
+	/**
+	 * Replaces the clauses of the previous problem by those of the owner
+	 * (if they are not already loaded) and starts a new enumeration.
+	 */
+	private void load(SessionSolver owner) {
+		SessionSolver previous = current;
+		current = owner;
+		if (previous != null) {
+			// Stops a search that could be running in the prefetch thread
+			stopSearch();
+		}
+		synchronized (this) {
+			if (owner.cnf != loadedCNF)
+				loadClauses(owner.cnf, owner.literalsMap);
+			try {
+				startEnumeration(owner);
+			} catch (ContradictionException e) {
+				throw new IllegalStateException(e); // Only -s unit clauses
+			}
+		}
+	}
+
+	private void loadClauses(CNF cnf, SymbolTable literalsMap) {
+		long start = System.currentTimeMillis();
+		if (nbRetiredClauses > REBUILD_MIN_RETIRED
+				&& nbRetiredClauses > REBUILD_RATIO * clauses.size()) {
+			System.out.println("loadClauses(): rebuilding the SAT4J solver ("
+					+ nbRetiredClauses + " retired clauses)");
+			reset();
+		}
+		try {
+			update(cnf, literalsMap);
+		} catch (ContradictionException e) {
+			// Only unit clauses on selectors are added at the root level,
+			// this should not happen
+			System.out.println("loadClauses(): " + e.getMessage() + ", rebuilding the SAT4J solver");
+			reset();
+			try {
+				update(cnf, literalsMap);
+			} catch (ContradictionException e1) {
+				throw new IllegalStateException(e1);
+			}
+		}
+		loadedCNF = cnf;
+		System.out.println("loadClauses(): SAT4J session updated in "
+				+ (System.currentTimeMillis() - start) + "ms (" + clauses.size()
+				+ " active clauses in " + groups.size() + " groups, "
+				+ nbRetiredClauses + " retired clauses)");
+	}
+
+	private void update(CNF cnf, SymbolTable literalsMap)
+			throws ContradictionException {
+		this.literalsMap = literalsMap;
+		this.nbCodes = cnf.getNbVariables();
+		visibleCodes = SolverSAT4J.visibleCodes(nbCodes, literalsMap);
+		codeToVariable = new int[nbCodes + 1];
+		for (int code = 1; code <= nbCodes; code++) {
+			String name = literalsMap.getName(code);
+			// The codes without a name are only known by their code
+			String key = (name != null) ? name : "\0" + code;
+			Integer variable = variables.get(key);
+			if (variable == null) {
+				variable = solver.nextFreeVarId(true);
+				variables.put(key, variable);
+			}
+			codeToVariable[code] = variable;
+		}
+
+		// The clauses of the new translation; the new ones have no group yet
+		HashMap<Clause, Group> next = new HashMap<Clause, Group>(
+				2 * cnf.getNbClauses() + 16);
+		List<Clause> added = new ArrayList<Clause>();
+		int[] literals = cnf.getLiterals();
+		int start = 0;
+		for (int i = 0; i < literals.length; i++) {
+			if (literals[i] != 0)
+				continue;
+			Clause clause = mapClause(literals, start, i);
+			start = i + 1;
+			if (clause == null || next.containsKey(clause))
+				continue; // Tautology or duplicate
+			Group group = clauses.get(clause);
+			next.put(clause, group);
+			if (group == null)
+				added.add(clause);
+		}
+
+		// A group that lost a clause is retired; its other clauses are added
+		// again with the new ones
+		for (Map.Entry<Clause, Group> entry : clauses.entrySet()) {
+			if (!next.containsKey(entry.getKey()))
+				entry.getValue().retired = true;
+		}
+		for (Map.Entry<Clause, Group> entry : next.entrySet()) {
+			if (entry.getValue() != null && entry.getValue().retired) {
+				added.add(entry.getKey());
+				entry.setValue(null);
+			}
+		}
+		List<Group> kept = new ArrayList<Group>();
+		for (Group group : groups) {
+			if (group.retired) {
+				solver.addClause(new VecInt(new int[] {-group.selector}));
+				nbRetiredClauses += group.size;
+			} else {
+				kept.add(group);
+			}
+		}
+
+		Group[] buckets = new Group[BUCKETS];
+		VecInt vec = new VecInt();
+		for (Clause clause : added) {
+			int b = (clause.hash ^ (clause.hash >>> 16)) & (BUCKETS - 1);
+			if (buckets[b] == null) {
+				buckets[b] = new Group(solver.nextFreeVarId(true));
+				kept.add(buckets[b]);
+			}
+			vec.clear();
+			for (int literal : clause.literals)
+				vec.push(literal);
+			vec.push(-buckets[b].selector);
+			solver.addClause(vec);
+			buckets[b].size++;
+			next.put(clause, buckets[b]);
+		}
+		clauses = next;
+		groups = kept;
+	}
+
+	/**
+	 * Retires the blocking clauses of the previous enumeration and gives the
+	 * assumptions of the new one: the selectors of the active groups, the
+	 * selector of the new blocking clauses and the pins of the owner.
+	 */
+	private void startEnumeration(SessionSolver owner)
+			throws ContradictionException {
+		if (enumerationSelector != 0) {
+			solver.addClause(new VecInt(new int[] {-enumerationSelector}));
+		}
+		done = false;
+		enumerationSelector = solver.nextFreeVarId(true);
+		assumptions = new VecInt(groups.size() + owner.pins.size() + 1);
+		for (Group group : groups) {
+			assumptions.push(group.selector);
+		}
+		assumptions.push(enumerationSelector);
+		pinnedVariables = new HashMap<Integer, String>();
+		for (Map.Entry<String, Boolean> pin : owner.pins.entrySet()) {
+			Integer variable = variables.get(pin.getKey());
+			if (variable == null) {
+				System.out.println("startEnumeration(): ignoring the pin on the unknown literal '"
+						+ pin.getKey() + "'");
+				continue;
+			}
+			assumptions.push(pin.getValue() ? variable : -variable);
+			pinnedVariables.put(variable, pin.getKey());
+		}
+	}
+
+	/**
+	 * @return the clause literals[start..end[ using the variables of the
+	 * session, or null if it is a tautology
+	 */
+	private Clause mapClause(int[] literals, int start, int end) {
+		int[] mapped = new int[end - start];
+		for (int i = start; i < end; i++) {
+			int variable = codeToVariable[Math.abs(literals[i])];
+			mapped[i - start] = (literals[i] > 0) ? variable : -variable;
+		}
+		Arrays.sort(mapped);
+		int size = 0;
+		for (int i = 0; i < mapped.length; i++) {
+			if (size > 0 && mapped[size - 1] == mapped[i])
+				continue;
+			if (Arrays.binarySearch(mapped, -mapped[i]) >= 0)
+				return null;
+			mapped[size++] = mapped[i];
+		}
+		return new Clause(size == mapped.length ? mapped : Arrays.copyOf(mapped, size));
+	}
+
+	private synchronized Model nextModel(SessionSolver owner, long timeout)
+			throws SolverExecutionException {
+		// Set before checking current and done: either load() and close()
+		// see it and expire the search, or this call sees their change
+		searching = true;
+		try {
+			return search(owner, timeout);
+		} finally {
+			searching = false;
+		}
+	}
+
+	private Model search(SessionSolver owner, long timeout)
+			throws SolverExecutionException {
+		if (owner != current || done) {
+			return null;
+		}
+		int[] rawModel;
+		solver.setTimeoutMs(timeout);
+		SolverSAT4J.resetConflictStatistics(solver);
+		try {
+			if (!solver.isSatisfiable(assumptions)) {
+				done = true;
+				if (owner.nbModels == 0 && !pinnedVariables.isEmpty())
+					owner.conflictingPins = explainConflict(owner);
+				return null;
+			}
+			rawModel = solver.model();
+		} catch (TimeoutException e) {
+			if (owner != current || done) // close() or load() has been called
+				return null;
+			done = true;
+			throw new SolverExecutionException("nextModel(): the solver "
+					+ "reached its timeout (" + timeout + "ms)");
+		}
+		long[] values = new long[(solver.nVars() >> 6) + 1];
+		for (int literal : rawModel) {
+			if (literal > 0)
+				values[literal >> 6] |= 1L << literal;
+		}
+		long[] polarity = new long[(nbCodes >> 6) + 1];
+		for (int code = 1; code <= nbCodes; code++) {
+			int variable = codeToVariable[code];
+			if ((values[variable >> 6] & (1L << variable)) != 0)
+				polarity[code >> 6] |= 1L << code;
+		}
+		// The next call to isSatisfiable() must not give the same visible
+		// model again (projected enumeration, see SolverSAT4J)
+		VecInt blockingClause = new VecInt(visibleCodes.length + 1);
+		for (int code : visibleCodes) {
+			int variable = codeToVariable[code];
+			boolean value = (polarity[code >> 6] & (1L << code)) != 0;
+			blockingClause.push(value ? -variable : variable);
+		}
+		blockingClause.push(-enumerationSelector);
+		try {
+			solver.addClause(blockingClause);
+		} catch (ContradictionException e) {
+			done = true; // This model was the last one
+		}
+		owner.nbModels++;
+		return new Model(literalsMap, nbCodes, polarity);
+	}
+
+	/**
+	 * @return the pins that SAT4J gave as the reason of the unsatisfiability
+	 */
+	private Map<String, Boolean> explainConflict(SessionSolver owner) {
+		IVecInt explanation = solver.unsatExplanation();
+		if (explanation == null) // No explanation: every pin is a suspect
+			return owner.pins;
+		Map<String, Boolean> conflicting = new LinkedHashMap<String, Boolean>();
+		for (int i = 0; i < explanation.size(); i++) {
+			String name = pinnedVariables.get(Math.abs(explanation.get(i)));
+			if (name != null)
+				conflicting.put(name, owner.pins.get(name));
+		}
+		return conflicting.isEmpty() ? owner.pins : conflicting;
+	}
+
+	private void close(SessionSolver owner) {
+		if (owner == current) {
+			done = true;
+			stopSearch();
+		}
+	}
+
+	/**
+	 * Expires the search of nextModel() until it returns: an expiration that
+	 * comes before isSatisfiable() has started would be lost.
+	 */
+	private void stopSearch() {
+		while (searching) {
+			solver.expireTimeout();
+			try {
+				Thread.sleep(EXPIRE_PERIOD);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * The Solver given by newSolver(): launch() loads its clauses into the
+	 * session.
+	 */
+	public class SessionSolver extends Solver {
+		private final CNF cnf;
+		private final SymbolTable literalsMap;
+		private final Map<String, Boolean> pins;
+		private final ModelList models;
+		/** Guarded by the session */
+		private int nbModels = 0;
+		private volatile Map<String, Boolean> conflictingPins = null;
+
+		private SessionSolver(CNF cnf, SymbolTable literalsMap,
+				Map<String, Boolean> pins) {
+			this.cnf = cnf;
+			this.literalsMap = literalsMap;
+			this.pins = Collections.unmodifiableMap(
+					new LinkedHashMap<String, Boolean>(pins));
+			this.models = new ModelList(this);
+		}
+
+		@Override
+		public void launch() throws IOException {
+			load(this);
+		}
+
+		/**
+		 * @return the value of each pinned literal (by name)
+		 */
+		public Map<String, Boolean> getPins() {
+			return pins;
+		}
+
+		/**
+		 * @return the pins that make the problem unsatisfiable (a subset of
+		 * getPins()), or null if a model has been found or if the problem is
+		 * unsatisfiable without any pin. Only known once the ModelList has
+		 * told that there is no model.
+		 */
+		public Map<String, Boolean> getConflictingPins() {
+			return conflictingPins;
+		}
+
+		@Override
+		public ModelList getModelList() throws SolverExecutionException {
+			return models;
+		}
+
+		/**
+		 * @return a counter of the models that also give the values of the
+		 * pins (the session is not used)
+		 */
+		@Override
+		public ModelCounter getModelCounter() throws SolverExecutionException {
+			return new ModelCounter(cnf, literalsMap, pins);
+		}
+
+		/**
+		 * @return a finder of the backbone of the models that also give the
+		 * values of the pins (the session is not used)
+		 */
+		@Override
+		public BackboneFinder getBackboneFinder() throws SolverExecutionException {
+			return new BackboneFinder(cnf, literalsMap, pins);
+		}
+
+		@Override
+		public void close() {
+			SAT4JSession.this.close(this);
+			System.out.println("close(): solver has been closed correctly");
+		}
+
+		@Override
+		protected Model nextModel(long timeout) throws IOException,
+				SolverExecutionException {
+			return SAT4JSession.this.nextModel(this, timeout);
+		}
+
+		@Override
+		protected Model parseModel(String[] rawModelOutput) {
+			int[] rawModel = new int[rawModelOutput.length];
+			for (int i = 0; i < rawModelOutput.length; i++) {
+				rawModel[i] = Integer.parseInt(rawModelOutput[i]);
+			}
+			return new Model(literalsMap, rawModel);
+		}
+	}
+}
@@ -72,13 +72,65 @@ public abstract class Solver {
 	public abstract ModelList getModelList() throws SolverExecutionException;
 
 	/**
-	 * ONLY used by ModelsIterator.
+	 * Gives a counter of the models that getModelList() would give. The
+	 * counter does not create any Model and does not change getModelList().
+	 * Can be used before or after launch().
+	 * @return the counter
+	 * @throws SolverExecutionException if this solver cannot count its models
+	 */
+	public ModelCounter getModelCounter() throws SolverExecutionException {
+		throw new SolverExecutionException("getModelCounter(): "
+				+ getClass().getSimpleName() + " cannot count its models");
+	}
+
+	/**
+	 * Gives a finder of the literals that have the same value in every model
+	 * that getModelList() would give. Does not change getModelList().
+	 * @return the finder
+	 * @throws SolverExecutionException if this solver cannot find its backbone
+	 */
+	public BackboneFinder getBackboneFinder() throws SolverExecutionException {
+		throw new SolverExecutionException("getBackboneFinder(): "
+				+ getClass().getSimpleName() + " cannot find its backbone");
+	}
+
+	/**
+	 * Default value of the timeout used by nextModel(), in milliseconds.
+	 */
+	public final static long DEFAULT_MODEL_TIMEOUT = 5000000;
+	private long modelTimeout = DEFAULT_MODEL_TIMEOUT;
+
+	/**
+	 * @param timeout the time (in milliseconds) nextModel() will wait for the
+	 * solver to give the next model before throwing SolverExecutionException
+	 */
+	public void setModelTimeout(long timeout) {
+		this.modelTimeout = timeout;
+	}
+
+	public long getModelTimeout() {
+		return modelTimeout;
+	}
+
+	/**
+	 * ONLY used by ModelsIterator. Same as nextModel(getModelTimeout()).
 	 * @return the model if there was a model, null if there is no model left.
 	 * @throws IOException
-	 * @throws NotSatisfiableException
 	 * @throws SolverExecutionException
 	 */
-	protected abstract Model nextModel() throws IOException, SolverExecutionException;
+	protected Model nextModel() throws IOException, SolverExecutionException {
+		return nextModel(modelTimeout);
+	}
+
+	/**
+	 * @param timeout the time (in milliseconds) to wait for the next model
+	 * @return the model if there was a model, null if there is no model left.
+	 * @throws IOException (InterruptedIOException if the thread has been
+	 * interrupted while waiting)
+	 * @throws SolverExecutionException if any error happened or if no model
+	 * was given before the timeout
+	 */
+	protected abstract Model nextModel(long timeout) throws IOException, SolverExecutionException;
 
 	/**
 	 * ONLY used by ModelsIterator
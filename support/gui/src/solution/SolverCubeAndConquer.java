@@ -0,0 +1,325 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package solution;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.TimeoutException;
+
+import entity.Model;
+import entity.SymbolTable;
+import translation.CNF;
+
+/**
+ * Parallel enumeration of the models ("cube and conquer"). The search space
+ * is split into 2^k disjoint cubes: each cube gives a value to the k cube
+ * variables (the visible variables that appear in the most clauses). The
+ * cubes are enumerated on a fork-join pool, each one by its own SAT4J
+ * solver (with the cube as unit clauses and its own blocking clauses).
+ *
+ * Two cubes cannot give the same visible model, and the blocking clauses
+ * only range over the visible literals (projected enumeration). The models are put in a
+ * bounded queue that nextModel() reads: the workers wait when the models
+ * are not read (e.g. in the results view), and run at full speed when every
+ * model is read (e.g. when all the models are exported).
+ *
+ * Enabled with -Dtouist.cubeAndConquer=true.
+ *
+ * @author Maël
+ */
+public class SolverCubeAndConquer extends Solver {
+	/** Number of models computed in advance by the workers */
+	private final static int QUEUE_SIZE = 1024;
+	/** There are about CUBES_PER_THREAD cubes per thread of the pool */
+	private final static int CUBES_PER_THREAD = 8;
+	private final static int MAX_CUBE_VARIABLES = 16;
+
+	/** Put in the queue when every cube has been enumerated */
+	private final static Model END = new Model(null, new int[0]);
+
+	private final CNF cnf;
+	private final SymbolTable literalsMap; // "table de correspondance"
+	private final ModelList models;
+	/** The codes of the blocking clauses (projected enumeration) */
+	private final int[] visibleCodes;
+	private final int parallelism;
+	private ForkJoinPool pool;
+	private int[] cubeVariables;
+	private final BlockingQueue<Model> queue = new ArrayBlockingQueue<Model>(QUEUE_SIZE);
+	/** The solvers of the cubes being enumerated (expired by close()) */
+	private final Set<ISolver> activeSolvers = Collections.newSetFromMap(
+			new ConcurrentHashMap<ISolver, Boolean>());
+	/** Set when close() has been called or when a cube has failed */
+	private volatile boolean closed = false;
+	/** The first error of a cube (e.g. its timeout), null if none */
+	private volatile Throwable failure = null;
+	private boolean done = false;
+
+	/**
+	 * @param cnf the clauses given by TranslatorSAT
+	 * @param literalsMap the "literals map" ("table de correspondance")
+	 * @param parallelism the number of threads of the pool
+	 */
+	public SolverCubeAndConquer(CNF cnf, SymbolTable literalsMap, int parallelism) {
+		this.cnf = cnf;
+		this.literalsMap = literalsMap;
+		this.parallelism = Math.max(1, parallelism);
+		this.visibleCodes = SolverSAT4J.visibleCodes(cnf.getNbVariables(), literalsMap);
+		this.models = new ModelList(this);
+	}
+
+	@Override
+	public void launch() throws IOException {
+		cubeVariables = chooseCubeVariables();
+		System.out.println("launch(): enumerating " + (1 << cubeVariables.length)
+				+ " cubes on " + parallelism + " threads");
+		pool = new ForkJoinPool(parallelism);
+		pool.execute(new RecursiveAction() {
+			@Override
+			protected void compute() {
+				try {
+					invokeAll(new CubeTask(0, 1 << cubeVariables.length));
+				} finally {
+					offer(END);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return the visible variables that appear in the most clauses (two
+	 * cubes that only differ on hidden variables could give the same visible
+	 * model)
+	 */
+	private int[] chooseCubeVariables() {
+		final int nbVariables = cnf.getNbVariables();
+		final int[] occurrences = new int[nbVariables + 1];
+		for (int literal : cnf.getLiterals()) {
+			occurrences[Math.abs(literal)]++;
+		}
+		List<Integer> candidates = new ArrayList<Integer>();
+		for (int variable : visibleCodes) {
+			if (occurrences[variable] > 0)
+				candidates.add(variable);
+		}
+		Collections.sort(candidates, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer v1, Integer v2) {
+				return occurrences[v2] - occurrences[v1];
+			}
+		});
+		int k = 0;
+		while ((1 << k) < CUBES_PER_THREAD * parallelism && k < MAX_CUBE_VARIABLES)
+			k++;
+		k = Math.min(k, candidates.size());
+		int[] chosen = new int[k];
+		for (int i = 0; i < k; i++)
+			chosen[i] = candidates.get(i);
+		return chosen;
+	}
+
+	/**
+	 * Enumerates the cubes first..last-1 (the bit i of the number of a cube is
+	 * the value of cubeVariables[i]), splitting the range in two until there
+	 * is only one cube.
+	 */
+	private class CubeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int first;
+		private final int last;
+
+		CubeTask(int first, int last) {
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected void compute() {
+			if (closed)
+				return;
+			if (last - first > 1) {
+				int middle = (first + last) >>> 1;
+				invokeAll(new CubeTask(first, middle), new CubeTask(middle, last));
+				return;
+			}
+			try {
+				enumerateCube(first);
+			} catch (Throwable e) {
+				if (!closed) {
+					failure = e;
+					closed = true;
+				}
+			}
+		}
+	}
+
+	private void enumerateCube(int cube) throws TimeoutException {
+		ISolver solver = SolverFactory.newDefault();
+		solver.newVar(cnf.getNbVariables());
+		solver.setExpectedNumberOfClauses(cnf.getNbClauses() + cubeVariables.length);
+		final int nbCodes = cnf.getNbVariables();
+		try {
+			VecInt clause = new VecInt();
+			for (int literal : cnf.getLiterals()) {
+				if (literal != 0) {
+					clause.push(literal);
+				} else {
+					solver.addClause(clause);
+					clause.clear();
+				}
+			}
+			for (int i = 0; i < cubeVariables.length; i++) {
+				boolean value = ((cube >> i) & 1) != 0;
+				solver.addClause(new VecInt(new int[] {value ? cubeVariables[i] : -cubeVariables[i]}));
+			}
+		} catch (ContradictionException e) {
+			return; // No model in this cube
+		}
+		solver.setTimeoutMs(getModelTimeout());
+		activeSolvers.add(solver);
+		try {
+			enumerateModels(solver, nbCodes);
+		} finally {
+			activeSolvers.remove(solver);
+		}
+	}
+
+	private void enumerateModels(ISolver solver, int nbCodes) throws TimeoutException {
+		while (!closed) {
+			SolverSAT4J.resetConflictStatistics(solver);
+			if (!solver.isSatisfiable())
+				return;
+			long[] polarity = SolverSAT4J.polarity(solver.model(), nbCodes);
+			if (!offer(new Model(literalsMap, nbCodes, polarity)))
+				return;
+			try {
+				solver.addBlockingClause(SolverSAT4J.blockingClause(polarity, visibleCodes));
+			} catch (ContradictionException e) {
+				return; // This model was the last one of the cube
+			}
+		}
+	}
+
+	/**
+	 * Waits for a place in the queue (the workers are blocked while the
+	 * models are not read).
+	 * @return false if close() has been called
+	 */
+	private boolean offer(Model model) {
+		try {
+			while (!queue.offer(model, 100, TimeUnit.MILLISECONDS)) {
+				if (closed && model != END)
+					return false;
+			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	@Override
+	public ModelList getModelList() throws SolverExecutionException {
+		return models;
+	}
+
+	@Override
+	public ModelCounter getModelCounter() throws SolverExecutionException {
+		return new ModelCounter(cnf, literalsMap);
+	}
+
+	@Override
+	public BackboneFinder getBackboneFinder() throws SolverExecutionException {
+		return new BackboneFinder(cnf, literalsMap);
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		for (ISolver solver : activeSolvers) {
+			solver.expireTimeout();
+		}
+		queue.clear(); // Unblocks the workers
+		if (pool != null)
+			pool.shutdownNow();
+		System.out.println("close(): solver has been closed correctly");
+	}
+
+	@Override
+	protected synchronized Model nextModel(long timeout) throws IOException,
+			SolverExecutionException {
+		if (pool == null) // Should not happen
+			throw new SolverExecutionException("nextModel(): exception: launch() has not been called");
+		if (done) {
+			return null;
+		}
+		Model model;
+		try {
+			model = queue.poll(timeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("nextModel(): interrupted");
+		}
+		if (model == null) {
+			done = true;
+			throw new SolverExecutionException("nextModel(): the solver "
+					+ "reached its timeout (" + timeout + "ms)");
+		}
+		if (model == END) {
+			done = true;
+			if (failure != null) {
+				throw new SolverExecutionException("nextModel(): a cube could not be enumerated: "
+						+ failure);
+			}
+			return null;
+		}
+		return model;
+	}
+
+	@Override
+	protected Model parseModel(String[] rawModelOutput) {
+		int[] rawModel = new int[rawModelOutput.length];
+		for (int i = 0; i < rawModelOutput.length; i++) {
+			rawModel[i] = Integer.parseInt(rawModelOutput[i]);
+		}
+		return new Model(literalsMap, rawModel);
+	}
+}
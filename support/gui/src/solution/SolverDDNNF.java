@@ -0,0 +1,147 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package solution;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.concurrent.CancellationException;
+
+import entity.Model;
+import entity.SymbolTable;
+import translation.CNF;
+
+/**
+ * Solver for the "#SAT" solver type: launch() compiles the clauses into a
+ * d-DNNF (see KnowledgeCompiler), which gives the exact number of models at
+ * once, even when there are billions of them. The models of the ModelList
+ * are then enumerated from the d-DNNF, without any SAT search.
+ *
+ * @author Maël
+ */
+public class SolverDDNNF extends Solver {
+	private final CNF cnf;
+	private final SymbolTable literalsMap; // "table de correspondance"
+	private final KnowledgeCompiler compiler;
+	private final ModelList models;
+	private KnowledgeCompiler.Node root;
+	private KnowledgeCompiler.Enumerator enumerator;
+	/** The values of the variables written by the enumerator (+1 or -1) */
+	private byte[] values;
+	private volatile boolean done = false;
+
+	/**
+	 * @param cnf the clauses given by TranslatorSAT
+	 * @param literalsMap the "literals map" ("table de correspondance")
+	 */
+	public SolverDDNNF(CNF cnf, SymbolTable literalsMap) {
+		this.cnf = cnf;
+		this.literalsMap = literalsMap;
+		this.compiler = new KnowledgeCompiler(cnf, literalsMap);
+		this.models = new ModelList(this);
+	}
+
+	/**
+	 * Compiles the clauses (can take long: close() stops it from another
+	 * thread).
+	 * @throws InterruptedException if close() has been called during the
+	 * compilation
+	 */
+	@Override
+	public void launch() throws IOException, InterruptedException {
+		try {
+			root = compiler.compile();
+		} catch (CancellationException e) {
+			done = true;
+			throw new InterruptedException("launch(): the compilation has been stopped");
+		} catch (OutOfMemoryError e) {
+			done = true;
+			throw new IOException("launch(): the d-DNNF is too large for the memory", e);
+		} catch (StackOverflowError e) {
+			done = true;
+			throw new IOException("launch(): the problem has too many variables for the compiler", e);
+		}
+		values = new byte[cnf.getNbVariables() + 1];
+		enumerator = new KnowledgeCompiler.Enumerator(root, values);
+		System.out.println("launch(): the d-DNNF has " + root.getCount() + " models");
+	}
+
+	/**
+	 * @return the exact number of models (over the visible literals)
+	 */
+	public BigInteger getExactCount() {
+		return root.getCount();
+	}
+
+	@Override
+	public ModelList getModelList() throws SolverExecutionException {
+		return models;
+	}
+
+	@Override
+	public ModelCounter getModelCounter() throws SolverExecutionException {
+		return new ModelCounter(cnf, literalsMap);
+	}
+
+	@Override
+	public BackboneFinder getBackboneFinder() throws SolverExecutionException {
+		return new BackboneFinder(cnf, literalsMap);
+	}
+
+	@Override
+	public void close() {
+		done = true;
+		compiler.cancel();
+		System.out.println("close(): solver has been closed correctly");
+	}
+
+	@Override
+	protected synchronized Model nextModel(long timeout) throws IOException,
+			SolverExecutionException {
+		if (done)
+			return null;
+		if (enumerator == null) // Should not happen
+			throw new SolverExecutionException("nextModel(): exception: launch() has not been called");
+		if (!enumerator.next()) {
+			done = true;
+			return null;
+		}
+		// The hidden literals are not in the d-DNNF: they are false
+		int nbCodes = cnf.getNbVariables();
+		long[] polarity = new long[(nbCodes >> 6) + 1];
+		for (int code = 1; code <= nbCodes; code++) {
+			if (values[code] > 0)
+				polarity[code >> 6] |= 1L << code;
+		}
+		return new Model(literalsMap, nbCodes, polarity);
+	}
+
+	@Override
+	protected Model parseModel(String[] rawModelOutput) {
+		int[] rawModel = new int[rawModelOutput.length];
+		for (int i = 0; i < rawModelOutput.length; i++) {
+			rawModel[i] = Integer.parseInt(rawModelOutput[i]);
+		}
+		return new Model(literalsMap, rawModel);
+	}
+}
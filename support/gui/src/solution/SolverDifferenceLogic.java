@@ -0,0 +1,352 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package solution;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+
+import entity.Model;
+import entity.SymbolTable;
+import touist.StreamPump;
+import translation.TranslationError;
+
+/**
+ * In-process solver for the difference logics (QF_IDL and QF_RDL): touist
+ * only translates the problem into SMT-LIB (see DifferenceLogicProblem),
+ * which is then solved by DPLL(T) without yices:
+ * - SAT4J solves the Boolean skeleton (an atom is a SAT variable);
+ * - the atoms of its model are pushed on a NegativeCycleDetector, in the
+ * same order each time: only the atoms after the first one whose value has
+ * changed are popped and pushed again (backtracking);
+ * - a negative cycle is explained by its atoms: the clause that forbids them
+ * together is added to SAT4J (a lemma, kept for the next models); every
+ * cycle found in the SAT model gives a lemma, then SAT4J solves again.
+ * The next models are asked with a blocking clause over the Bool variables
+ * and the atoms: two models differ in a Bool or in a comparison.
+ *
+ * Everything is in this object (no process once translated), so several
+ * problems can be solved in parallel. Like SolverSMT, the errors of touist
+ * are given by getErrors().
+ *
+ * The names of the models are the SMT-LIB names written by touist, where
+ * '(', ')', ',' and ' ' are replaced by '_' (p_a_b_ for p(a,b)): this solver
+ * is only used with -Dtouist.inProcessDifferenceLogic=true.
+ *
+ * @author Maël
+ */
+public class SolverDifferenceLogic extends SolverSMT {
+	/** The Tseitin encoding recurses as deep as touist nests its formulas */
+	private final static long STACK_SIZE = 512L << 20;
+	/** The doubles are exact integers up to 2^53 */
+	private final static long MAX_EXACT_INTEGER = 1L << 53;
+
+	private final BufferedReader reader;
+	private final String logic;
+	private int returnCode = OK;
+
+	private DifferenceLogicProblem problem;
+	private ISolver solver;
+	private NegativeCycleDetector detector;
+	/** The literals of the atoms on the detector (the i-th is its i-th edge) */
+	private int[] trail;
+	private int trailSize = 0;
+	private boolean exhausted = false;
+	private volatile boolean closed = false;
+	private int nbModels = 0;
+	private int nbLemmas = 0;
+
+	/**
+	 * @param logic "QF_IDL" or "QF_RDL" (see supports())
+	 */
+	public SolverDifferenceLogic(BufferedReader reader, String logic) {
+		super(reader, logic);
+		this.reader = reader;
+		this.logic = logic;
+	}
+
+	/**
+	 * @return true if the logic can be solved by this solver
+	 */
+	public static boolean supports(String logic) {
+		return "QF_IDL".equals(logic) || "QF_RDL".equals(logic);
+	}
+
+	/**
+	 * Translates the problem with touist and encodes it for SAT4J.
+	 * @throws IOException if the problem is not a difference logic problem
+	 */
+	@Override
+	public void launch() throws IOException, InterruptedException {
+		String smtlib = translate();
+		if (smtlib != null)
+			load(smtlib);
+	}
+
+	/**
+	 * @return the SMT-LIB text or null if touist failed (see getErrors())
+	 */
+	private String translate() throws IOException {
+		List<String> cmd = new ArrayList<String>();
+		cmd.add(touist.TouIST.getTouistBin());
+		cmd.add("--smt");
+		cmd.add(logic);
+		cmd.add("-");
+		cmd.add("--error-format");
+		cmd.add("%l:%c:%b:%B: %t: %m");
+		System.out.println("translate(): cmd executed: "+cmd.toString());
+		Process p = touist.TouistProcessPool.getInstance().exec(cmd);
+		ProcessWatcher stdout = new ProcessWatcher(p, "touist");
+		StreamPump stderr = new StreamPump(p.getErrorStream(), "touist-stderr");
+		PrintWriter stdin = new PrintWriter(new OutputStreamWriter(p.getOutputStream()));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			stdin.write(line + "\n");
+		}
+		stdin.close();
+		StringBuilder smtlib = new StringBuilder();
+		try {
+			for (String l : stdout.readRemainingLines(Long.MAX_VALUE / 4)) {
+				smtlib.append(l).append('\n');
+			}
+			returnCode = stdout.waitFor(Long.MAX_VALUE / 4);
+		} catch (TimeoutException e) { // Should not happen
+			p.destroy();
+			throw new IOException("translate(): touist did not exit", e);
+		}
+		if (returnCode != OK) {
+			errors = TranslationError.parse(stderr.getContent());
+			return null;
+		}
+		return smtlib.toString();
+	}
+
+	/**
+	 * Encodes the SMT-LIB problem for SAT4J and the detector.
+	 * @throws IOException if the problem is not a difference logic problem
+	 */
+	void load(final String smtlib) throws IOException, InterruptedException {
+		long start = System.currentTimeMillis();
+		final DifferenceLogicProblem[] result = new DifferenceLogicProblem[1];
+		final Throwable[] error = new Throwable[1];
+		Thread thread = new Thread(null, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					result[0] = new DifferenceLogicProblem(smtlib, logic.equals("QF_IDL"));
+				} catch (Throwable e) {
+					error[0] = e;
+				}
+			}
+		}, "touist-difference-logic", STACK_SIZE);
+		thread.start();
+		thread.join();
+		if (error[0] instanceof IOException)
+			throw (IOException) error[0];
+		if (error[0] instanceof StackOverflowError)
+			throw new IOException("load(): the formula is nested too deeply", error[0]);
+		if (error[0] != null)
+			throw new IOException("load(): " + error[0], error[0]);
+		problem = result[0];
+
+		solver = SolverFactory.newDefault();
+		solver.newVar(problem.getNbVariables());
+		try {
+			for (int[] clause : problem.getClauses()) {
+				solver.addClause(new VecInt(clause));
+			}
+		} catch (ContradictionException e) {
+			exhausted = true;
+			returnCode = UNSAT;
+		}
+		detector = new NegativeCycleDetector(problem.getNbNodes());
+		trail = new int[problem.getAtoms().length];
+		System.out.println("load(): " + problem.getAtoms().length + " atoms, "
+				+ problem.getClauses().size() + " clauses ("
+				+ (System.currentTimeMillis() - start) + "ms)");
+	}
+
+	@Override
+	protected Model nextModel(long timeout) throws IOException, SolverExecutionException {
+		if (problem == null) {
+			if (returnCode != OK)
+				throw new SolverExecutionException("nextModel(): touist returned error code "
+						+Integer.toString(returnCode)+"\n"+errors.toString());
+			throw new SolverExecutionException("nextModel(): exception: launch() has not been called");
+		}
+		if (exhausted || closed)
+			return null;
+		final long deadline = System.currentTimeMillis() + timeout;
+		boolean[] value = new boolean[problem.getNbVariables() + 1];
+		try {
+			while (true) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0)
+					throw new TimeoutException();
+				solver.setTimeoutMs(remaining);
+				SolverSAT4J.resetConflictStatistics(solver);
+				if (!solver.isSatisfiable()) {
+					exhausted = true;
+					if (nbModels == 0)
+						returnCode = UNSAT;
+					return null;
+				}
+				for (int literal : solver.model()) {
+					value[Math.abs(literal)] = literal > 0;
+				}
+				List<int[]> lemmas = check(value);
+				if (lemmas.isEmpty())
+					break;
+				for (int[] lemma : lemmas) {
+					nbLemmas++;
+					solver.addClause(new VecInt(lemma));
+				}
+			}
+		} catch (org.sat4j.specs.TimeoutException | TimeoutException e) {
+			if (closed)
+				return null;
+			throw new SolverExecutionException("nextModel(): timeout = "
+					+Long.toString(timeout)+"ms)");
+		} catch (ContradictionException e) { // A lemma contradicts the clauses
+			exhausted = true;
+			if (nbModels == 0)
+				returnCode = UNSAT;
+			return null;
+		}
+		nbModels++;
+		System.out.println("nextModel(): model " + nbModels + " (" + nbLemmas + " lemmas so far)");
+		Model model = toModel(value);
+		block(value);
+		return model;
+	}
+
+	/**
+	 * Pushes the atoms of the SAT model on the detector (the first ones
+	 * already on it with the same value are kept). After a negative cycle,
+	 * the next atoms are still pushed (except the ones that close a cycle) so
+	 * that a single SAT call gets all the lemmas it can; the trail is then
+	 * cut just before the first cycle.
+	 * @param value the value of each SAT variable
+	 * @return the lemmas (the negations of the atoms of the negative cycles),
+	 * empty if the atoms are consistent
+	 */
+	private List<int[]> check(boolean[] value) {
+		int[] atoms = problem.getAtoms();
+		List<int[]> lemmas = new ArrayList<int[]>();
+		int i = 0;
+		while (i < trailSize && (trail[i] > 0) == value[atoms[i]])
+			i++;
+		detector.pop(i);
+		trailSize = i;
+		for (; i < atoms.length; i++) {
+			int literal = value[atoms[i]] ? atoms[i] : -atoms[i];
+			int[] cycle = detector.push(problem.getSource(literal),
+					problem.getTarget(literal), problem.getWeight(literal), literal);
+			if (cycle != null) {
+				for (int j = 0; j < cycle.length; j++)
+					cycle[j] = -cycle[j];
+				lemmas.add(cycle);
+			} else if (lemmas.isEmpty()) {
+				trail[trailSize++] = literal;
+			}
+		}
+		detector.pop(trailSize);
+		return lemmas;
+	}
+
+	/**
+	 * @return the values of the Bool variables (0 or 1) and of the Int or
+	 * Real variables (the potentials of the detector, zero being 0); the
+	 * Int values that a double cannot hold are also given exactly
+	 */
+	private Model toModel(boolean[] value) {
+		Map<String, Integer> booleans = problem.getBooleans();
+		Map<String, Integer> numerics = problem.getNumerics();
+		int nbValues = booleans.size() + numerics.size();
+		SymbolTable names = new SymbolTable(nbValues);
+		double[] values = new double[nbValues];
+		int code = 0;
+		for (Map.Entry<String, Integer> b : booleans.entrySet()) {
+			values[code++] = value[b.getValue()] ? 1 : 0;
+			names.put(code, b.getKey());
+		}
+		String[] texts = null;
+		long zero = detector.getPotential(DifferenceLogicProblem.ZERO);
+		for (Map.Entry<String, Integer> n : numerics.entrySet()) {
+			long potential = detector.getPotential(n.getValue()) - zero;
+			if (logic.equals("QF_IDL") && Math.abs(potential) > MAX_EXACT_INTEGER) {
+				if (texts == null)
+					texts = new String[nbValues];
+				texts[code] = Long.toString(potential); // Not scaled in IDL
+			}
+			values[code++] = problem.unscale(potential);
+			names.put(code, n.getKey());
+		}
+		return new Model(names, values, texts);
+	}
+
+	/**
+	 * Forbids the values of the Bool variables and of the atoms of this model.
+	 */
+	private void block(boolean[] value) {
+		VecInt clause = new VecInt();
+		for (int variable : problem.getBooleans().values()) {
+			clause.push(value[variable] ? -variable : variable);
+		}
+		for (int variable : problem.getAtoms()) {
+			clause.push(value[variable] ? -variable : variable);
+		}
+		try {
+			if (clause.isEmpty())
+				exhausted = true; // Nothing can differ
+			else
+				solver.addClause(clause);
+		} catch (ContradictionException e) {
+			exhausted = true;
+		}
+	}
+
+	@Override
+	public int getReturnCode() {
+		return returnCode;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		if (solver != null)
+			solver.expireTimeout();
+		System.out.println("close(): solver has been closed correctly");
+	}
+}
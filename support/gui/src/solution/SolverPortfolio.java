@@ -0,0 +1,363 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package solution;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.minisat.core.ICDCL;
+import org.sat4j.minisat.orders.PhaseInLastLearnedClauseSelectionStrategy;
+import org.sat4j.minisat.orders.RSATPhaseSelectionStrategy;
+import org.sat4j.minisat.orders.RandomLiteralSelectionStrategy;
+import org.sat4j.minisat.orders.RandomWalkDecorator;
+import org.sat4j.minisat.orders.VarOrderHeap;
+import org.sat4j.minisat.restarts.LubyRestarts;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.TimeoutException;
+
+import entity.Model;
+import entity.SymbolTable;
+import translation.CNF;
+
+/**
+ * Portfolio of SAT4J solvers: several configurations (restart policy, phase
+ * heuristic, random walk, clause order) search for the next model of the
+ * same clauses in parallel threads. The first one that answers wins and the
+ * others are stopped with expireTimeout(). Each model is then blocked in
+ * every member so that they all enumerate the same remaining models.
+ *
+ * SAT4J has no random seed for a given solver: the "seed" of a member is the
+ * order in which its clauses are given, which changes the watched literals
+ * and the ties of the variable heuristic.
+ *
+ * Enabled with -Dtouist.portfolio=N (N members, at most the number of
+ * configurations); the incremental SAT4JSession is not used then.
+ *
+ * @author Maël
+ */
+public class SolverPortfolio extends Solver {
+	/** The names of the configurations, see newMember() */
+	private final static String[] CONFIGURATIONS = {
+		"glucose21",
+		"luby-rsat",
+		"glucose21-randomwalk",
+		"armin-rsat",
+		"glucose21-lastlearned",
+		"minisat",
+		"best17",
+		"luby-randomphase",
+	};
+	/** How often (in ms) a member that ignored expireTimeout() is stopped again */
+	private final static long EXPIRE_PERIOD = 50;
+
+	private final CNF cnf;
+	private final SymbolTable literalsMap; // "table de correspondance"
+	private final ModelList models;
+	/** The codes of the blocking clauses (projected enumeration) */
+	private final int[] visibleCodes;
+	private final int nbMembers;
+	private ISolver[] members;
+	private ExecutorService executor;
+
+	/**
+	 * Set to true when the solver cannot give any more model (unsat, all
+	 * models have been enumerated or close() has been called).
+	 */
+	private volatile boolean done = false;
+
+	/**
+	 * @param cnf the clauses given by TranslatorSAT
+	 * @param literalsMap the "literals map" ("table de correspondance")
+	 * @param nbMembers the number of configurations run in parallel
+	 */
+	public SolverPortfolio(CNF cnf, SymbolTable literalsMap, int nbMembers) {
+		this.cnf = cnf;
+		this.literalsMap = literalsMap;
+		this.nbMembers = Math.max(1, Math.min(nbMembers, CONFIGURATIONS.length));
+		this.visibleCodes = SolverSAT4J.visibleCodes(cnf.getNbVariables(), literalsMap);
+		this.models = new ModelList(this);
+	}
+
+	/**
+	 * @param i the number of the configuration (see CONFIGURATIONS)
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static ISolver newMember(int i) {
+		ICDCL solver;
+		switch (i) {
+		case 1:
+			return SolverFactory.newMiniLearningHeapRsatExpSimpLuby();
+		case 2:
+			solver = SolverFactory.newGlucose21();
+			solver.setOrder(new RandomWalkDecorator(
+					new VarOrderHeap(new RSATPhaseSelectionStrategy()), 0.02));
+			return solver;
+		case 3:
+			return SolverFactory.newMiniLearningHeapRsatExpSimpBiere();
+		case 4:
+			solver = SolverFactory.newGlucose21();
+			solver.setOrder(new VarOrderHeap(
+					new PhaseInLastLearnedClauseSelectionStrategy()));
+			return solver;
+		case 5:
+			return SolverFactory.newMiniSATHeapExpSimp();
+		case 6:
+			return SolverFactory.newBest17();
+		case 7:
+			solver = SolverFactory.newGlucose21();
+			solver.setRestartStrategy(new LubyRestarts(512));
+			solver.setOrder(new VarOrderHeap(new RandomLiteralSelectionStrategy()));
+			return solver;
+		default:
+			return SolverFactory.newDefault();
+		}
+	}
+
+	@Override
+	public void launch() throws IOException {
+		final AtomicInteger threadNumber = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(nbMembers, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "touist-portfolio-" + threadNumber.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		// Where each clause starts in cnf.getLiterals()
+		final int[] literals = cnf.getLiterals();
+		int nbClauses = 0;
+		for (int literal : literals) {
+			if (literal == 0)
+				nbClauses++;
+		}
+		final int nbStarts = nbClauses;
+		final int[] starts = new int[nbStarts];
+		for (int i = 0, c = 0; c < nbStarts; i++) {
+			if (i == 0 || literals[i - 1] == 0)
+				starts[c++] = i;
+		}
+
+		// The members load their clauses in parallel
+		members = new ISolver[nbMembers];
+		List<Callable<Boolean>> loaders = new ArrayList<Callable<Boolean>>();
+		for (int m = 0; m < nbMembers; m++) {
+			final int member = m;
+			loaders.add(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					ISolver solver = newMember(member);
+					solver.newVar(cnf.getNbVariables());
+					solver.setExpectedNumberOfClauses(cnf.getNbClauses());
+					int[] order = new int[nbStarts];
+					for (int i = 0; i < nbStarts; i++)
+						order[i] = i;
+					if (member > 0) { // The first member keeps the order of touist
+						Random seed = new Random(member);
+						for (int i = nbStarts - 1; i > 0; i--) {
+							int j = seed.nextInt(i + 1);
+							int tmp = order[i];
+							order[i] = order[j];
+							order[j] = tmp;
+						}
+					}
+					members[member] = solver;
+					VecInt clause = new VecInt();
+					try {
+						for (int c : order) {
+							clause.clear();
+							for (int i = starts[c]; literals[i] != 0; i++)
+								clause.push(literals[i]);
+							solver.addClause(clause);
+						}
+					} catch (ContradictionException e) {
+						return false; // Trivially unsatisfiable
+					}
+					return true;
+				}
+			});
+		}
+		try {
+			for (Future<Boolean> loaded : executor.invokeAll(loaders)) {
+				if (!loaded.get())
+					done = true;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("launch(): interrupted");
+		} catch (ExecutionException e) {
+			throw new IOException("launch(): cannot load the clauses: " + e.getCause(), e.getCause());
+		}
+		System.out.println("launch(): " + nbMembers + " SAT4J configurations loaded the clauses ("
+				+ cnf.getNbVariables() + " variables, " + cnf.getNbClauses() + " clauses)");
+	}
+
+	@Override
+	public ModelList getModelList() throws SolverExecutionException {
+		return models;
+	}
+
+	@Override
+	public ModelCounter getModelCounter() throws SolverExecutionException {
+		return new ModelCounter(cnf, literalsMap);
+	}
+
+	@Override
+	public BackboneFinder getBackboneFinder() throws SolverExecutionException {
+		return new BackboneFinder(cnf, literalsMap);
+	}
+
+	@Override
+	public void close() {
+		done = true;
+		if (members != null) {
+			// Stops a search that could be running in the members
+			for (ISolver member : members) {
+				if (member != null)
+					member.expireTimeout();
+			}
+		}
+		if (executor != null)
+			executor.shutdown();
+		System.out.println("close(): solver has been closed correctly");
+	}
+
+	@Override
+	protected synchronized Model nextModel(long timeout) throws IOException,
+			SolverExecutionException {
+		if (members == null) // Should not happen
+			throw new SolverExecutionException("nextModel(): exception: launch() has not been called");
+		if (done) {
+			return null;
+		}
+		CompletionService<Boolean> search = new ExecutorCompletionService<Boolean>(executor);
+		List<Future<Boolean>> searches = new ArrayList<Future<Boolean>>();
+		for (final ISolver member : members) {
+			member.setTimeoutMs(timeout);
+			SolverSAT4J.resetConflictStatistics(member);
+			searches.add(search.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws TimeoutException {
+					return member.isSatisfiable();
+				}
+			}));
+		}
+		int winner = -1;
+		boolean satisfiable = false;
+		try {
+			for (int i = 0; i < members.length && winner < 0; i++) {
+				Future<Boolean> answer = search.take();
+				try {
+					satisfiable = answer.get();
+					winner = searches.indexOf(answer);
+				} catch (ExecutionException e) {
+					// This member reached the timeout (or failed): the others
+					// may still answer
+					if (!(e.getCause() instanceof TimeoutException))
+						System.err.println("nextModel(): " + CONFIGURATIONS[searches.indexOf(answer)]
+								+ " failed: " + e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			stopSearches(searches);
+			throw new InterruptedIOException("nextModel(): interrupted");
+		}
+		// The members must not search anymore before their clauses change
+		stopSearches(searches);
+		if (winner < 0) {
+			if (done) // close() has been called during the search
+				return null;
+			done = true;
+			throw new SolverExecutionException("nextModel(): the solver "
+					+ "reached its timeout (" + timeout + "ms)");
+		}
+		System.out.println("nextModel(): " + CONFIGURATIONS[winner] + " answered first");
+		if (!satisfiable) {
+			done = true;
+			return null;
+		}
+
+		final int nbCodes = cnf.getNbVariables();
+		long[] polarity = SolverSAT4J.polarity(members[winner].model(), nbCodes);
+		// The next searches must not give the same visible model again
+		for (ISolver member : members) {
+			try {
+				member.addBlockingClause(SolverSAT4J.blockingClause(polarity, visibleCodes));
+			} catch (ContradictionException e) {
+				done = true; // This model was the last one
+			}
+		}
+		return new Model(literalsMap, nbCodes, polarity);
+	}
+
+	/**
+	 * Stops the members that are still searching and waits for them.
+	 * expireTimeout() is called again until the search stops, as a member
+	 * may not have started its search when it is first called.
+	 */
+	private void stopSearches(List<Future<Boolean>> searches) {
+		boolean interrupted = false;
+		for (int i = 0; i < searches.size(); i++) {
+			Future<Boolean> search = searches.get(i);
+			while (!search.isDone()) {
+				members[i].expireTimeout();
+				try {
+					search.get(EXPIRE_PERIOD, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+				} catch (java.util.concurrent.TimeoutException e) {
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	@Override
+	protected Model parseModel(String[] rawModelOutput) {
+		int[] rawModel = new int[rawModelOutput.length];
+		for (int i = 0; i < rawModelOutput.length; i++) {
+			rawModel[i] = Integer.parseInt(rawModelOutput[i]);
+		}
+		return new Model(literalsMap, rawModel);
+	}
+}
@@ -34,28 +34,26 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
-import java.util.regex.MatchResult;
-import java.util.regex.Pattern;
+import java.util.concurrent.TimeoutException;
 
-import entity.Literal;
 import entity.Model;
+import touist.StreamPump;
 import translation.TranslationError;
 
 public class SolverQBF extends Solver {
 	private Process p;
 	private PrintWriter stdin;
 	private BufferedReader reader;
-	private BufferedReader stderr;
-	private BufferedReader stdout;
+	private StreamPump stderr;
+	private ProcessWatcher stdout;
 	private List<String> options = new ArrayList<>();
 	public List<TranslationError> errors = new ArrayList<TranslationError>();
 
 	private ModelList models;
+	private final ValuesParser parser = new ValuesParser(ValuesParser.Syntax.QBF);
 
 	/**
 	 * Use this constructor each time you want to solve.
@@ -75,18 +73,6 @@ public class SolverQBF extends Solver {
 		models = new ModelList(this);
 	}
 
-    /**
-     * For java jre 1.6 and 1.7 compatibility (p.isAlive() is java jre >= 1.8)
-     */
-	private boolean isAlive(Process process) {
-	    try {
-	        process.exitValue();
-	        return false;
-	    } catch (Exception e) {
-	        return true;
-	    }
-	}
-	
 	@Override
 	public void launch() throws IOException, InterruptedException {
 		// TODO We should be able to re-use the Solver instance
@@ -107,10 +93,10 @@ public class SolverQBF extends Solver {
 		
         System.out.println("translate_solve(): cmd executed: "+cmd.toString());
 		
-        this.p = Runtime.getRuntime().exec(cmd.toArray(new String[0]));
+        this.p = touist.TouistProcessPool.getInstance().exec(cmd);
 
-        stdout = new BufferedReader(new InputStreamReader(p.getInputStream()));
-		stderr = new BufferedReader(new InputStreamReader(this.p.getErrorStream()));
+        stdout = new ProcessWatcher(p, "touist");
+		stderr = new StreamPump(p.getErrorStream(), "touist-stderr");
         stdin = new PrintWriter(new OutputStreamWriter(p.getOutputStream()));
         String s = "";
         while ((s = reader.readLine())!=null) {
@@ -127,10 +113,14 @@ public class SolverQBF extends Solver {
 
 	@Override
 	public void close() {
-		stdin.println("\n0");
-		stdin.write(0);
-		stdin.close();
-		this.p.destroy();
+		// touist has not been started if launch() failed
+		if (stdin != null) {
+			stdin.println("\n0");
+			stdin.write(0);
+			stdin.close();
+		}
+		if (p != null)
+			this.p.destroy();
 		System.out.println("close(): solver has been closed correctly");
 	}
 
@@ -142,27 +132,35 @@ public class SolverQBF extends Solver {
 	public final static int BUG             = 125;
 
 	@Override
-	protected Model nextModel() throws IOException, SolverExecutionException {
-		final int WAIT_FOR_MODEL_TIMEOUT = 5000000; // ms
+	protected Model nextModel(long timeout) throws IOException, SolverExecutionException {
 		if (p == null) // Should not happen
 			throw new SolverExecutionException("nextModel(): exception: launch() has not been called");
 
 		Model modelParsed = null;
-		// We wait for any output from the solver unless we get a timeout
-		boolean no_timeout = waitResult(WAIT_FOR_MODEL_TIMEOUT);
-		// Case 1 : we got some text to read from stdout
-		if(stdout.ready() && p.exitValue() == 0) {
-			String assignements = "";
-			while(stdout.ready())
-				assignements += stdout.readLine() + "\n";
-			modelParsed = parseModel(assignements.split("\\n"));
-		}
-		// Case 2 : no text but solver still running
-		if(!stdout.ready() && ! no_timeout) { // Nothing has been read
+		// We wait for the solver to exit unless we get a timeout
+		if(!waitResult(timeout)) {
 			throw new SolverExecutionException("nextModel(): timeout = "
-					+Integer.toString(WAIT_FOR_MODEL_TIMEOUT)+"ms)");
+					+Long.toString(timeout)+"ms)");
 		}
-		
+		// Case 1 : we got some text to read from stdout
+		if(p.exitValue() == OK) {
+			// The lines are parsed as they are read (see ValuesParser)
+			final long deadline = System.currentTimeMillis() + timeout;
+			boolean empty = true;
+			try {
+				String line;
+				while ((line = stdout.readLine(Math.max(0, deadline - System.currentTimeMillis()))) != null) {
+					parser.parseLine(line);
+					empty = false;
+				}
+			} catch (TimeoutException e) {
+				throw new SolverExecutionException("nextModel(): stdout not closed after timeout = "
+						+Long.toString(timeout)+"ms)");
+			}
+			if(!empty)
+				modelParsed = parser.toModel();
+		}
+
 		if(p.exitValue() == UNSAT)
 			return modelParsed;
 		else if(p.exitValue() != OK) {
@@ -173,18 +171,10 @@ public class SolverQBF extends Solver {
 
 	@Override
 	protected Model parseModel(String[] rawModelOutput) {
-		Model model = new Model();
 		for (String line : rawModelOutput) {
-			Scanner scan = new Scanner(line);
-			Pattern p1 = Pattern.compile("^([0-9]|\\?) (.*)$");
-			if(p1.matcher(line).find()) {
-				scan.findInLine(p1);
-				MatchResult r = scan.match();
-				model.addLiteral(new Literal(r.group(2),r.group(1)));
-			}
-			scan.close();
+			parser.parseLine(line);
 		}
-		return model;
+		return parser.toModel();
 	}
 	
 	public int getReturnCode() {
@@ -201,26 +191,15 @@ public class SolverQBF extends Solver {
 	 * @return true if the result has been given before the timeout
 	 * @throws IOException
 	 */
-	public boolean waitResult(int timeout) throws IOException {
-		final long timeout_time = System.currentTimeMillis() + timeout;
-		while(isAlive(p) && System.currentTimeMillis() < timeout_time){
-			// Active waiting (I know, it is a bad way to do it!)
-			try {
-				synchronized (this) { // for JavaRE6 compliance
-					this.wait(10);
-				}
-			} catch (InterruptedException e) {
-				// TODO I added this wait to avoid active complete waiting
-				e.printStackTrace();
-			}
-		}
-		if(isAlive(p))
+	public boolean waitResult(long timeout) throws IOException {
+		try {
+			stdout.waitFor(timeout);
+		} catch (TimeoutException e) {
 			return false;
+		}
 
 		if(p.exitValue() != OK) {
-			String linesStdErr = "";
-			while (stderr.ready())
-				linesStdErr += stderr.readLine() + "\n";
+			String linesStdErr = stderr.getContent();
 			errors = TranslationError.parse(linesStdErr);
 		}
 		return true;
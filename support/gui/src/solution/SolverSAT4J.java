@@ -0,0 +1,323 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package solution;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.reader.DimacsReader;
+import org.sat4j.reader.ParseFormatException;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.TimeoutException;
+
+import entity.Model;
+import entity.SymbolTable;
+import translation.CNF;
+
+/**
+ * In-process implementation of Solver: SAT4J runs inside the GUI's JVM instead
+ * of a separate 'java -jar minisat.jar' process (see SolverTestSAT4J). The
+ * clauses given by TranslatorSAT (or a DIMACS file) are given directly to
+ * SAT4J and the models are enumerated by adding a blocking clause after each
+ * model. The enumeration is projected on the visible literals (see
+ * blockingClause()).
+ *
+ * @author Maël
+ */
+public class SolverSAT4J extends Solver {
+	private ISolver solver;
+	private String dimacsFilePath;
+	private CNF cnf;
+	private SymbolTable literalsMap; // "table de correspondance"
+	private int nbCodes;
+	private int[] visibleCodes;
+
+	private ModelList models;
+
+	/**
+	 * Set to true when the solver cannot give any more model (unsat, all
+	 * models have been enumerated or close() has been called).
+	 */
+	private volatile boolean done;
+
+	/**
+	 * @param dimacsFilePath the DIMACS file given by TranslatorSAT
+	 * @param literalsMap the "literals map" ("table de correspondance")
+	 */
+	public SolverSAT4J(String dimacsFilePath, SymbolTable literalsMap) {
+		this.dimacsFilePath = dimacsFilePath;
+		this.cnf = null;
+		this.literalsMap = literalsMap;
+		this.solver = null;
+		this.done = false;
+		models = new ModelList(this);
+	}
+
+	/**
+	 * @param cnf the clauses given by TranslatorSAT (no file is read)
+	 * @param literalsMap the "literals map" ("table de correspondance")
+	 */
+	public SolverSAT4J(CNF cnf, SymbolTable literalsMap) {
+		this.dimacsFilePath = null;
+		this.cnf = cnf;
+		this.literalsMap = literalsMap;
+		this.solver = null;
+		this.done = false;
+		models = new ModelList(this);
+	}
+
+	@Override
+	public void launch() throws IOException {
+		solver = SolverFactory.newDefault();
+		if (cnf != null) {
+			addClauses(cnf);
+			nbCodes = cnf.getNbVariables();
+			visibleCodes = visibleCodes(nbCodes, literalsMap);
+			System.out.println("launch(): SAT4J loaded the clauses ("
+					+ solver.nVars() + " variables, " + solver.nConstraints()
+					+ " clauses)");
+			return;
+		}
+		DimacsReader reader = new DimacsReader(solver);
+		try {
+			reader.parseInstance(dimacsFilePath);
+		} catch (FileNotFoundException e) {
+			throw new IOException("launch(): cannot open the DIMACS file '"
+					+ dimacsFilePath + "'", e);
+		} catch (ParseFormatException e) {
+			throw new IOException("launch(): incorrect DIMACS content in '"
+					+ dimacsFilePath + "': " + e.getMessage(), e);
+		} catch (ContradictionException e) {
+			done = true; // Trivially unsatisfiable
+		}
+		nbCodes = solver.nVars();
+		visibleCodes = visibleCodes(nbCodes, literalsMap);
+		System.out.println("launch(): SAT4J loaded '" + dimacsFilePath + "' ("
+				+ solver.nVars() + " variables, " + solver.nConstraints()
+				+ " clauses)");
+	}
+
+	private void addClauses(CNF cnf) {
+		solver.newVar(cnf.getNbVariables());
+		solver.setExpectedNumberOfClauses(cnf.getNbClauses());
+		int[] literals = cnf.getLiterals();
+		VecInt clause = new VecInt();
+		try {
+			for (int literal : literals) {
+				if (literal != 0) {
+					clause.push(literal);
+				} else {
+					solver.addClause(clause);
+					clause.clear();
+				}
+			}
+		} catch (ContradictionException e) {
+			done = true; // Trivially unsatisfiable
+		}
+	}
+
+	@Override
+	public ModelList getModelList() throws SolverExecutionException {
+		return models;
+	}
+
+	@Override
+	public ModelCounter getModelCounter() throws SolverExecutionException {
+		if (cnf == null)
+			throw new SolverExecutionException("getModelCounter(): the clauses "
+					+ "must be given as a CNF, not as a DIMACS file");
+		return new ModelCounter(cnf, literalsMap);
+	}
+
+	@Override
+	public BackboneFinder getBackboneFinder() throws SolverExecutionException {
+		if (cnf == null)
+			throw new SolverExecutionException("getBackboneFinder(): the clauses "
+					+ "must be given as a CNF, not as a DIMACS file");
+		return new BackboneFinder(cnf, literalsMap);
+	}
+
+	@Override
+	public void close() {
+		done = true;
+		if (solver != null) {
+			// Stops a search that could be running in another thread
+			solver.expireTimeout();
+		}
+		System.out.println("close(): solver has been closed correctly");
+	}
+
+	@Override
+	protected synchronized Model nextModel(long timeout) throws IOException,
+			SolverExecutionException {
+		if (solver == null) // Should not happen
+			throw new SolverExecutionException("nextModel(): exception: launch() has not been called");
+		if (done) {
+			return null;
+		}
+		int[] rawModel;
+		solver.setTimeoutMs(timeout);
+		resetConflictStatistics(solver);
+		try {
+			if (!solver.isSatisfiable()) {
+				done = true;
+				return null;
+			}
+			rawModel = solver.model();
+		} catch (TimeoutException e) {
+			if (done) // close() has been called during the search
+				return null;
+			done = true;
+			throw new SolverExecutionException("nextModel(): the solver "
+					+ "reached its timeout (" + timeout + "ms)");
+		}
+		long[] polarity = polarity(rawModel, nbCodes);
+		// The next call to isSatisfiable() must not give the same visible
+		// model again
+		try {
+			solver.addBlockingClause(blockingClause(polarity, visibleCodes));
+		} catch (ContradictionException e) {
+			done = true; // This model was the last one
+		}
+		return new Model(literalsMap, nbCodes, polarity);
+	}
+
+	/**
+	 * @return the codes 1..nbCodes that are shown to the user (not the '&45'
+	 * literals, issue #88)
+	 */
+	static int[] visibleCodes(int nbCodes, SymbolTable literalsMap) {
+		int[] visible = new int[nbCodes];
+		int size = 0;
+		for (int code = 1; code <= nbCodes; code++) {
+			if (literalsMap == null || !literalsMap.isHidden(code))
+				visible[size++] = code;
+		}
+		return Arrays.copyOf(visible, size);
+	}
+
+	/**
+	 * @param pins the value of each pinned literal (by name); the names that
+	 * are not in literalsMap are ignored
+	 * @param nbCodes the number of variables of the CNF
+	 * @return the codes of the pinned literals (and their values)
+	 */
+	static Map<Integer, Boolean> pinnedCodes(Map<String, Boolean> pins,
+			SymbolTable literalsMap, int nbCodes) {
+		Map<Integer, Boolean> codes = new HashMap<Integer, Boolean>();
+		if (pins.isEmpty() || literalsMap == null)
+			return codes;
+		Map<String, Integer> names = new HashMap<String, Integer>();
+		for (int code = 1; code <= Math.min(literalsMap.getMaxCode(), nbCodes); code++) {
+			String name = literalsMap.getName(code);
+			if (name != null)
+				names.put(name, code);
+		}
+		for (Map.Entry<String, Boolean> pin : pins.entrySet()) {
+			Integer code = names.get(pin.getKey());
+			if (code == null) {
+				System.out.println("pinnedCodes(): ignoring the pin on the unknown literal '"
+						+ pin.getKey() + "'");
+				continue;
+			}
+			codes.put(code, pin.getValue());
+		}
+		return codes;
+	}
+
+	/**
+	 * @param rawModel the model given by SAT4J: the variables that are in no
+	 * clause are not in it (they are false)
+	 * @return the values of the codes 1..nbCodes as a bitset
+	 */
+	static long[] polarity(int[] rawModel, int nbCodes) {
+		long[] polarity = new long[(nbCodes >> 6) + 1];
+		for (int literal : rawModel) {
+			if (literal > 0 && literal <= nbCodes)
+				polarity[literal >> 6] |= 1L << literal;
+		}
+		return polarity;
+	}
+
+	/**
+	 * Projected enumeration: the blocking clause only ranges over the visible
+	 * literals, so that the models that only differ on hidden literals are
+	 * not enumerated at all (instead of being skipped by the ModelList). The
+	 * visible literals that are in no clause are in the blocking clause, so
+	 * that both of their values are enumerated.
+	 * @param polarity the values of the codes
+	 * @param visibleCodes given by visibleCodes()
+	 * @return the clause that forbids these visible values
+	 */
+	static VecInt blockingClause(long[] polarity, int[] visibleCodes) {
+		VecInt clause = new VecInt(visibleCodes.length + 1);
+		for (int code : visibleCodes) {
+			boolean value = (polarity[code >> 6] & (1L << code)) != 0;
+			clause.push(value ? -code : code);
+		}
+		return clause;
+	}
+
+	/**
+	 * Must be called before each isSatisfiable() on a solver that has
+	 * already searched: the restarts and the clean-ups of the learned clauses
+	 * are scheduled on the number of conflicts since the beginning, which
+	 * must not count the previous searches (the second search can be ten
+	 * times slower otherwise).
+	 */
+	static void resetConflictStatistics(ISolver solver) {
+		if (solver instanceof org.sat4j.minisat.core.Solver)
+			((org.sat4j.minisat.core.Solver<?>) solver).getStats().reset();
+	}
+
+	@Override
+	protected Model parseModel(String[] rawModelOutput) {
+		int[] rawModel = new int[rawModelOutput.length];
+		for (int i = 0; i < rawModelOutput.length; i++) {
+			rawModel[i] = Integer.parseInt(rawModelOutput[i]);
+		}
+		// The names are not copied: the model refers to the literals map
+		return new Model(literalsMap, rawModel);
+	}
+
+	/**
+	 * @return the DIMACS file path
+	 */
+	protected String getDimacsFilePath() {
+		return dimacsFilePath;
+	}
+
+	/**
+	 * @return the literalsMap (DIMACS integer to string names)
+	 */
+	protected SymbolTable getLiteralsMap() {
+		return literalsMap;
+	}
+}
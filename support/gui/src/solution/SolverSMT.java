@@ -34,34 +34,43 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.math.BigDecimal;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
-import java.util.regex.MatchResult;
-import java.util.regex.Pattern;
+import java.util.concurrent.TimeoutException;
 
-import entity.Literal;
 import entity.Model;
+import touist.StreamPump;
 import translation.TranslationError;
 
 public class SolverSMT extends Solver {
     private Process p;
     private PrintWriter stdin;
     private BufferedReader reader;
-    private BufferedReader stderr;
-    private BufferedReader stdout;
+    private StreamPump stderr;
+    private ProcessWatcher stdout;
     private List<String> options = new ArrayList<>();
     public List<TranslationError> errors = new ArrayList<TranslationError>();
 
     private String logic;
 
     private ModelList models;
+    private final ValuesParser parser = new ValuesParser(ValuesParser.Syntax.SMT);
+
+    /** The problem given by the reader, kept for solving it again */
+    private String source = null;
+    /** One blocking formula (one line) per model already given */
+    private final StringBuilder blockingFormulas = new StringBuilder();
+    private Model lastModel = null;
+    private boolean exhausted = false;
+    /** The sort ("Bool", "Int" or "Real") of each variable (sanitized name) */
+    private Map<String, String> sorts = null;
 
     /**
      * Use this constructor each time you want to solve.
@@ -83,24 +92,24 @@ public class SolverSMT extends Solver {
         models = new ModelList(this);
     }
 
-    /**
-     * For java jre 1.6 and 1.7 compatibility (p.isAlive() is java jre >= 1.8)
-     */
-    private boolean isAlive(Process process) {
-        try {
-            process.exitValue();
-            return false;
-        } catch (Exception e) {
-            return true;
-        }
-    }
-
     @Override
     public void launch() throws IOException, InterruptedException {
         // TODO We should be able to re-use the Solver instance
         // TODO We should be warned if the "java -cp" command fails because it
         // can't find the files
+        StringBuilder text = new StringBuilder();
+        String s = "";
+        while ((s = reader.readLine())!=null) {
+            text.append(s).append('\n');
+        }
+        source = text.toString();
+        start(source);
+    }
 
+    /**
+     * Starts 'touist --smt --solve' (from the process pool) on input.
+     */
+    private void start(String input) throws IOException {
         String pathtouist = touist.TouIST.getTouistBin();
 
         List<String> cmd = new ArrayList<String>();
@@ -116,15 +125,12 @@ public class SolverSMT extends Solver {
 
         System.out.println("translate_solve(): cmd executed: "+cmd.toString());
 
-        this.p = Runtime.getRuntime().exec(cmd.toArray(new String[0]));
+        this.p = touist.TouistProcessPool.getInstance().exec(cmd);
 
-        stdout = new BufferedReader(new InputStreamReader(p.getInputStream()));
-        stderr = new BufferedReader(new InputStreamReader(this.p.getErrorStream()));
+        stdout = new ProcessWatcher(p, "touist");
+        stderr = new StreamPump(p.getErrorStream(), "touist-stderr");
         stdin = new PrintWriter(new OutputStreamWriter(p.getOutputStream()));
-        String s = "";
-        while ((s = reader.readLine())!=null) {
-            stdin.write(s + "\n");
-        }
+        stdin.write(input);
         stdin.flush();
         stdin.close();
     }
@@ -136,10 +142,14 @@ public class SolverSMT extends Solver {
 
     @Override
     public void close() {
-        stdin.println("\n0");
-        stdin.write(0);
-        stdin.close();
-        this.p.destroy();
+        // touist has not been started if launch() failed
+        if (stdin != null) {
+            stdin.println("\n0");
+            stdin.write(0);
+            stdin.close();
+        }
+        if (p != null)
+            this.p.destroy();
         System.out.println("close(): solver has been closed correctly");
     }
 
@@ -151,49 +161,173 @@ public class SolverSMT extends Solver {
 	public final static int BUG             = 125;
 
     @Override
-    protected Model nextModel() throws IOException, SolverExecutionException {
-        final int WAIT_FOR_MODEL_TIMEOUT = 5000000; // ms
+    protected Model nextModel(long timeout) throws IOException, SolverExecutionException {
         if (p == null) // Should not happen
             throw new SolverExecutionException("nextModel(): exception: launch() has not been called");
+        if (exhausted)
+            return null;
+        if (lastModel != null) {
+            // touist gives one model: the problem is solved again with the
+            // models already given blocked
+            String formula = blockingFormula(lastModel, timeout);
+            if (formula == null) {
+                exhausted = true;
+                return null;
+            }
+            blockingFormulas.append(formula).append('\n');
+            start(source + blockingFormulas);
+        }
 
         Model modelParsed = null;
-        // We wait for any output from the solver unless we get a timeout
-        boolean no_timeout = waitResult(WAIT_FOR_MODEL_TIMEOUT);
-        // Case 1 : we got some text to read from stdout
-        if(stdout.ready() && p.exitValue() == 0) {
-            String assignements = "";
-            while(stdout.ready())
-                assignements += stdout.readLine() + "\n";
-            modelParsed = parseModel(assignements.split("\\n"));
-        }
-        // Case 2 : no text but solver still running
-        if(!stdout.ready() && ! no_timeout) { // Nothing has been read
+        // We wait for the solver to exit unless we get a timeout
+        if(!waitResult(timeout)) {
             throw new SolverExecutionException("nextModel(): timeout = "
-                    +Integer.toString(WAIT_FOR_MODEL_TIMEOUT)+"ms)");
+                    +Long.toString(timeout)+"ms)");
+        }
+        // Case 1 : we got some text to read from stdout
+        if(p.exitValue() == OK) {
+            // The lines are parsed as they are read (see ValuesParser)
+            final long deadline = System.currentTimeMillis() + timeout;
+            boolean empty = true;
+            try {
+                String line;
+                while ((line = stdout.readLine(Math.max(0, deadline - System.currentTimeMillis()))) != null) {
+                    parser.parseLine(line);
+                    empty = false;
+                }
+            } catch (TimeoutException e) {
+                throw new SolverExecutionException("nextModel(): stdout not closed after timeout = "
+                        +Long.toString(timeout)+"ms)");
+            }
+            if(!empty)
+                modelParsed = parser.toModel();
         }
 
-        if(p.exitValue() == UNSAT)
-            return modelParsed;
-        else if(p.exitValue() != OK) {
+        if(p.exitValue() != UNSAT && p.exitValue() != OK) {
             throw new SolverExecutionException("nextModel(): touist returned error code "+Integer.toString(p.exitValue())+"\n"+errors.toString());
-        } else
-            return modelParsed;
+        }
+        lastModel = modelParsed;
+        exhausted = (modelParsed == null);
+        return modelParsed;
+    }
+
+    /**
+     * Gives the touist formula that is false for model, e.g.,
+     * "not ((p) and (not q) and (x == 3) and (y > 0.49999999999 and y < 0.50000000001))".
+     * The reals are printed by touist with 12 significant digits, so a real
+     * is blocked on the values that are at less than one last digit of the
+     * printed value (a touist literal cannot be more precise): the next models
+     * are different once printed.
+     * @return the formula or null if nothing can be blocked (no model can
+     * differ from this one)
+     */
+    private String blockingFormula(Model model, long timeout) throws IOException,
+            SolverExecutionException {
+        double[] values = model.getValues();
+        StringBuilder formula = new StringBuilder();
+        for (int code = 1; code <= values.length; code++) {
+            // An unreadable value ("1.2.3") cannot be blocked
+            if (Double.isNaN(values[code - 1]))
+                continue;
+            String name = model.getName(code);
+            String sort = sortOf(name, values[code - 1], timeout);
+            String atom;
+            if (sort.equals("Bool")) {
+                atom = (values[code - 1] != 0) ? name : "not " + name;
+            } else if (sort.equals("Int")) {
+                // Exact, even beyond 2^53 (see Model.getValueText())
+                atom = name + " == " + model.getValueText(code);
+            } else {
+                BigDecimal printed = new BigDecimal(Double.toString(values[code - 1]));
+                // 10^(e-11) where 10^e is the first printed digit
+                BigDecimal lastDigit = BigDecimal.ONE.movePointLeft(
+                        printed.scale() - printed.precision() + 12);
+                if (printed.signum() == 0)
+                    atom = name + " == 0.0";
+                else
+                    atom = name + " > " + touistReal(printed.subtract(lastDigit))
+                            + " and " + name + " < " + touistReal(printed.add(lastDigit));
+            }
+            formula.append(formula.length() == 0 ? "not (" : " and ")
+                    .append('(').append(atom).append(')');
+        }
+        return (formula.length() == 0) ? null : formula.append(')').toString();
+    }
+
+    /**
+     * @return the real as a touist float (digits, '.', digits)
+     */
+    private static String touistReal(BigDecimal real) {
+        String text = real.stripTrailingZeros().toPlainString();
+        return (text.indexOf('.') < 0) ? text + ".0" : text;
+    }
+
+    /**
+     * @return the sort ("Bool", "Int" or "Real") of the variable, as
+     * declared by 'touist --smt' (translated once); a variable that is not
+     * declared is a Bool if its value is 0 or 1
+     */
+    private String sortOf(String name, double value, long timeout) throws IOException,
+            SolverExecutionException {
+        if (sorts == null)
+            sorts = declaredSorts(timeout);
+        // Same as Smt.sanitize_var
+        String sort = sorts.get(name.replace('(', '_').replace(')', '_')
+                .replace(',', '_').replace(' ', '_'));
+        if (sort != null)
+            return sort;
+        if (value == 0 || value == 1)
+            return "Bool";
+        return (logic.equals("QF_IDL") || logic.equals("QF_LIA")) ? "Int" : "Real";
+    }
+
+    /**
+     * Translates the problem into SMT-LIB with 'touist --smt' and reads the
+     * "(declare-fun x () Int)" lines.
+     * @return the sort of each variable (by sanitized name); empty if the
+     * translation failed
+     */
+    private Map<String, String> declaredSorts(long timeout) throws IOException,
+            SolverExecutionException {
+        List<String> cmd = new ArrayList<String>();
+        cmd.add(touist.TouIST.getTouistBin());
+        cmd.add("--smt");
+        cmd.add(logic);
+        cmd.add("-");
+        Process translation = touist.TouistProcessPool.getInstance().exec(cmd);
+        ProcessWatcher watcher = new ProcessWatcher(translation, "touist-smt2");
+        new StreamPump(translation.getErrorStream(), "touist-smt2-stderr");
+        PrintWriter input = new PrintWriter(new OutputStreamWriter(translation.getOutputStream()));
+        input.write(source);
+        input.close();
+        Map<String, String> declared = new HashMap<String, String>();
+        List<String> lines;
+        try {
+            lines = watcher.readRemainingLines(timeout);
+            if (watcher.waitFor(timeout) != OK)
+                return declared;
+        } catch (TimeoutException e) {
+            translation.destroy();
+            throw new SolverExecutionException("declaredSorts(): timeout = "
+                    +Long.toString(timeout)+"ms)");
+        }
+        final String prefix = "(declare-fun ";
+        for (String line : lines) {
+            int nameEnd = line.indexOf(" () ");
+            if (line.startsWith(prefix) && nameEnd > 0 && line.endsWith(")")) {
+                declared.put(line.substring(prefix.length(), nameEnd),
+                        line.substring(nameEnd + 4, line.length() - 1));
+            }
+        }
+        return declared;
     }
 
     @Override
     protected Model parseModel(String[] rawModelOutput) {
-        Model model = new Model();
         for (String line : rawModelOutput) {
-            Scanner scan = new Scanner(line);
-            Pattern p1 = Pattern.compile("^([.0-9]+) (.*)$");
-            if(p1.matcher(line).find()) {
-                scan.findInLine(p1);
-                MatchResult r = scan.match();
-                model.addLiteral(new Literal(r.group(2),r.group(1)));
-            }
-            scan.close();
+            parser.parseLine(line);
         }
-        return model;
+        return parser.toModel();
     }
 
     public int getReturnCode() {
@@ -210,26 +344,15 @@ public class SolverSMT extends Solver {
      * @return true if the result has been given before the timeout
      * @throws IOException
      */
-    public boolean waitResult(int timeout) throws IOException {
-        final long timeout_time = System.currentTimeMillis() + timeout;
-        while(isAlive(p) && System.currentTimeMillis() < timeout_time){
-            // Active waiting (I know, it is a bad way to do it!)
-            try {
-                synchronized (this) { // for JavaRE6 compliance
-                    this.wait(10);
-                }
-            } catch (InterruptedException e) {
-                // TODO I added this wait to avoid active complete waiting
-                e.printStackTrace();
-            }
-        }
-        if(isAlive(p))
+    public boolean waitResult(long timeout) throws IOException {
+        try {
+            stdout.waitFor(timeout);
+        } catch (TimeoutException e) {
             return false;
+        }
 
         if(p.exitValue() != OK) {
-            String linesStdErr = "";
-            while (stderr.ready())
-                linesStdErr += stderr.readLine() + "\n";
+            String linesStdErr = stderr.getContent();
             System.err.println("====== cmd executed: begin stderr  =======");
             System.err.print(linesStdErr);
             System.err.println("====== end stderr =======");
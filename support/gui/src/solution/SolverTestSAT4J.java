@@ -26,19 +26,25 @@ package solution;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.Map;
+import java.util.Deque;
+import java.util.concurrent.TimeoutException;
 
-import entity.Literal;
 import entity.Model;
+import entity.SymbolTable;
+import touist.StreamPump;
 import touist.TouIST;
+import translation.CNF;
 
 /**
  * This class is a first implementation of the "Solver" abstract class. It
@@ -51,14 +57,30 @@ import touist.TouIST;
 public class SolverTestSAT4J extends Solver {
 	private Process p;
 	private PrintWriter stdin;
-	private BufferedReader stderr;
-	private BufferedReader stdout;
+	private StreamPump stderr;
+	private ProcessWatcher stdout;
 
 	private String dimacsFilePath;
-	private Map<Integer, String> literalsMap; // "table de correspondance"
+	private CNF cnf;
+	private SymbolTable literalsMap; // "table de correspondance"
 
 	private ModelList models;
 
+	/**
+	 * The models are asked to minisat.jar by batches: "N" is written on its
+	 * stdin and it streams back (at most) N models, one per line. The first
+	 * batch only contains one model (so that the first model is displayed as
+	 * soon as possible) and the size of the next batches doubles up to
+	 * maxBatchSize.
+	 */
+	public final static int DEFAULT_MAX_BATCH_SIZE = 1024;
+	private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+	private int batchSize = 1;
+	/** Number of models that have been asked but not read yet */
+	private int pendingModels = 0;
+	/** Models read from minisat.jar but not given to ModelListIterator yet */
+	private Deque<Model> bufferedModels = new ArrayDeque<Model>();
+
 	/**
 	 * This is the main constructor used by the user after he translated the
 	 * BIGAND file to a DIMACS file (and the "literalsMap" associated).
@@ -66,7 +88,7 @@ public class SolverTestSAT4J extends Solver {
 	 * @param literalsMap the "literals map" ("table de correspondance")
 	 */
 	public SolverTestSAT4J(String dimacsFilePath,
-			Map<Integer, String> literalsMap) {
+			SymbolTable literalsMap) {
 		this.dimacsFilePath = dimacsFilePath;
 		this.literalsMap = literalsMap;
 		this.p = null;
@@ -74,6 +96,20 @@ public class SolverTestSAT4J extends Solver {
 		models = new ModelList(this);
 	}
 
+	/**
+	 * minisat.jar can only read a DIMACS file: the clauses are written into a
+	 * temporary file by launch().
+	 * @param cnf the clauses given by TranslatorSAT
+	 * @param literalsMap the "literals map" ("table de correspondance")
+	 */
+	public SolverTestSAT4J(CNF cnf, SymbolTable literalsMap) {
+		this.cnf = cnf;
+		this.literalsMap = literalsMap;
+		this.p = null;
+		this.stdin = null;
+		models = new ModelList(this);
+	}
+
 	/**
 	 * This constructor is useful when the user wants to solve a problem without
 	 * using a "literalsMap" ("table de correspondance"). Hence the user has
@@ -88,18 +124,6 @@ public class SolverTestSAT4J extends Solver {
 		models = new ModelList(this);
 	}
 
-    /**
-     * For java jre 1.6 and 1.7 compatibility (p.isAlive() is java jre >= 1.8)
-     */
-	private boolean isAlive(Process process) {
-	    try {
-	        process.exitValue();
-	        return false;
-	    } catch (Exception e) {
-	        return true;
-	    }
-	}
-	
 	@Override
 	public void launch() throws IOException {
 		// TODO We should be able to re-use the Solver instance
@@ -115,11 +139,23 @@ public class SolverTestSAT4J extends Solver {
 
 		String pathminisat = TouIST.getTouistExternalDir() + File.separator + "minisat.jar";
 
+		if (cnf != null && dimacsFilePath == null) {
+			File dimacs = File.createTempFile("touist", ".cnf");
+			dimacs.deleteOnExit();
+			Writer out = new BufferedWriter(new FileWriter(dimacs));
+			try {
+				cnf.writeDimacs(out);
+			} finally {
+				out.close();
+			}
+			dimacsFilePath = dimacs.getAbsolutePath();
+		}
+
 		String [] command = { "java", "-jar",pathminisat, this.dimacsFilePath} ;
 		System.out.println("launch(): cmd executed: "+Arrays.toString(command));
 		this.p = Runtime.getRuntime().exec(command);
-		stderr = new BufferedReader(new InputStreamReader(p.getErrorStream()));
-		stdout = new BufferedReader(new InputStreamReader(p.getInputStream()));
+		stderr = new StreamPump(p.getErrorStream(), "minisat-stderr");
+		stdout = new ProcessWatcher(p, "minisat");
 		stdin = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
 				p.getOutputStream())));
 	}
@@ -129,74 +165,89 @@ public class SolverTestSAT4J extends Solver {
 		return models;
 	}
 
+	@Override
+	public ModelCounter getModelCounter() throws SolverExecutionException {
+		if (cnf == null)
+			throw new SolverExecutionException("getModelCounter(): the clauses "
+					+ "must be given as a CNF, not as a DIMACS file");
+		return new ModelCounter(cnf, literalsMap);
+	}
+
+	@Override
+	public BackboneFinder getBackboneFinder() throws SolverExecutionException {
+		if (cnf == null)
+			throw new SolverExecutionException("getBackboneFinder(): the clauses "
+					+ "must be given as a CNF, not as a DIMACS file");
+		return new BackboneFinder(cnf, literalsMap);
+	}
+
 	@Override
 	public void close() {
-		stdin.println("\n0");
-		stdin.close();
-		this.p.destroy();
+		// The solver has not been started if launch() failed
+		if (stdin != null) {
+			stdin.println("\n0");
+			stdin.close();
+		}
+		if (p != null)
+			this.p.destroy();
 		System.out.println("close(): solver has been closed correctly");
 	}
 
+	/**
+	 * @param maxBatchSize the maximum number of models asked at once to
+	 * minisat.jar (1 means one model per round-trip, as before)
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+		this.batchSize = Math.min(batchSize, this.maxBatchSize);
+	}
+
 	@Override
-	protected Model nextModel() throws IOException, SolverExecutionException {
-		final int WAIT_FOR_MODEL_TIMEOUT = 5000000; // ms
+	protected Model nextModel(long timeout) throws IOException, SolverExecutionException {
 		if (p == null) // Should not happen
 			throw new SolverExecutionException("nextModel(): exception: launch() has not been called");
-		if (!isAlive(p)) { // The solver is already done
-			return null;
+		if (!bufferedModels.isEmpty()) {
+			return bufferedModels.poll();
 		}
-		String[] rawLiterals;
-		Model modelParsed = null;
-		stdin.println("1"); // tells the solver to give the next model 
-		stdin.flush();
-		// We wait for any output from the solver unless we get a timeout
-		final long timeout = System.currentTimeMillis() + WAIT_FOR_MODEL_TIMEOUT;
-		while(!stdout.ready() && isAlive(p) && System.currentTimeMillis() < timeout){
-			// Active waiting (I know, it is a bad way to do it!)
-			try {
-				synchronized (this) { // for JavaRE6 compliance
-					this.wait(10);
-				}
-			} catch (InterruptedException e) {
-				// TODO I added this wait to avoid active complete waiting
-				e.printStackTrace();
+		if (pendingModels == 0) {
+			if (!stdout.isAlive()) { // The solver is already done
+				return null;
 			}
+			stdin.println(batchSize); // tells the solver to give the next models
+			stdin.flush();
+			pendingModels = batchSize;
+			batchSize = Math.min(2 * batchSize, maxBatchSize);
 		}
-		// Case 1 : we got some text to read from stdout
-		if(stdout.ready()) {
-			rawLiterals = stdout.readLine().split(" ");
-			modelParsed = parseModel(rawLiterals);
-		}
-		// Case 2 : no text but solver still running
-		if(!stdout.ready() && System.currentTimeMillis() >= timeout) { // Nothing has been read
+		// We wait for any output from the solver unless we get a timeout
+		String line;
+		try {
+			line = stdout.readLine(timeout);
+		} catch (TimeoutException e) {
 			throw new SolverExecutionException("nextModel(): exception: "
 					+ "the solver didn't give any output (timeout = "
-					+Integer.toString(WAIT_FOR_MODEL_TIMEOUT)+"ms)");
+					+Long.toString(timeout)+"ms)");
 		}
-		return modelParsed;
+		// We also read every model of the current batch that is already available
+		while (line != null) {
+			pendingModels--;
+			bufferedModels.add(parseModel(line.split(" ")));
+			line = (pendingModels > 0) ? stdout.readLineIfReady() : null;
+		}
+		if (bufferedModels.isEmpty()) { // The solver exited, no model left
+			pendingModels = 0;
+			return null;
+		}
+		return bufferedModels.poll();
 	}
 
 	@Override
 	protected Model parseModel(String[] rawModelOutput) {
-		// TODO The parser should be able to handle the "-3" (negation)
-		Model model = new Model();
-		for (String rawLiteral : rawModelOutput) {
-			int literalInt = Integer.parseInt(rawLiteral);
-			if (literalInt != 0) { // '0' means 'end of model'
-				int literalCode = (literalInt > 0 ? literalInt : literalInt * (-1));
-				String literalString = getLiteralsMap().get(literalCode);
-				if (literalString != null) {
-					// Added for filtering '&45' literals (issue #88)
-					if(literalString.charAt(0) != '&') {
-						model.addLiteral(new Literal(getLiteralsMap().get(
-								literalCode), literalInt > 0));
-					}
-				} else {
-					model.addLiteral(new Literal(rawLiteral, literalInt > 0));
-				}
-			}
+		int[] rawModel = new int[rawModelOutput.length];
+		for (int i = 0; i < rawModelOutput.length; i++) {
+			rawModel[i] = Integer.parseInt(rawModelOutput[i]); // '0' means 'end of model'
 		}
-		return model;
+		// The '&45' literals (issue #88) are filtered by Model
+		return new Model(getLiteralsMap(), rawModel);
 	}
 
 	/**
@@ -211,7 +262,7 @@ public class SolverTestSAT4J extends Solver {
 	 * ONLY used by Models
 	 * @return the literalsMap (DIMACS integer to string names)
 	 */
-	protected Map<Integer, String> getLiteralsMap() {
+	protected SymbolTable getLiteralsMap() {
 		return literalsMap;
 	}
 }
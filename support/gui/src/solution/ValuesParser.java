@@ -0,0 +1,194 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package solution;
+
+import java.util.Arrays;
+
+import entity.Model;
+import entity.SymbolTable;
+
+/**
+ * Parses the "value name" lines given by 'touist --smt --solve' and
+ * 'touist --qbf --solve' in a single pass, one line at a time, as they come
+ * out of the ProcessWatcher: no regex, no Scanner and no substring for the
+ * values. The lines that are not "value name" lines are ignored.
+ *
+ * The values buffer is reused from one model to the next; only the names
+ * and the values of each model are allocated. The integers of more than 15
+ * digits, that a double cannot always hold, are also kept as they were
+ * printed (see Model.getValueText()).
+ *
+ * @author Maël
+ */
+public class ValuesParser {
+	public enum Syntax {
+		/**
+		 * The value is an integer or a real, e.g., "-3", "2.5" or "1e-05"
+		 * ("1.2.3" gives NaN)
+		 */
+		SMT,
+		/** The value is one digit or '?' (the value does not matter: NaN) */
+		QBF
+	}
+
+	/** Powers of 10 that are exact doubles */
+	private final static double[] POW10 = new double[23];
+	static {
+		POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++)
+			POW10[i] = POW10[i - 1] * 10;
+	}
+	/** With at most 15 digits, the mantissa is an exact double */
+	private final static int MAX_FAST_DIGITS = 15;
+
+	private final Syntax syntax;
+	private SymbolTable names;
+	private double[] values = new double[1024];
+	private int nbValues = 0;
+	/** The exact integers of the current model (null if there is none) */
+	private String[] texts = null;
+
+	public ValuesParser(Syntax syntax) {
+		this.syntax = syntax;
+		this.names = new SymbolTable();
+	}
+
+	/**
+	 * Adds the value of the line to the current model if the line is a
+	 * "value name" line.
+	 * @return true if the line was a "value name" line
+	 */
+	public boolean parseLine(String line) {
+		int space = valueEnd(line);
+		if (space < 0)
+			return false;
+		double value = (syntax == Syntax.QBF) ? qbfValue(line.charAt(0))
+				: smtValue(line, space);
+		if (nbValues == values.length)
+			values = Arrays.copyOf(values, 2 * values.length);
+		if (syntax == Syntax.SMT && isLongInteger(line, space)) {
+			if (texts == null)
+				texts = new String[values.length];
+			else if (texts.length < values.length)
+				texts = Arrays.copyOf(texts, values.length);
+			texts[nbValues] = line.substring(0, space);
+		}
+		values[nbValues++] = value;
+		names.put(nbValues, line.substring(space + 1));
+		return true;
+	}
+
+	/**
+	 * @return the model made of the lines parsed since the last call; the
+	 * parser is then ready for the next model
+	 */
+	public Model toModel() {
+		Model model = new Model(names, Arrays.copyOf(values, nbValues),
+				(texts == null) ? null : Arrays.copyOf(texts, nbValues));
+		names = new SymbolTable();
+		nbValues = 0;
+		texts = null;
+		return model;
+	}
+
+	/**
+	 * @return the index of the space between the value and the name, or -1
+	 * if the line is not a value, a space and a (non empty) name
+	 */
+	private int valueEnd(String line) {
+		int length = line.length();
+		if (syntax == Syntax.QBF) {
+			if (length < 3 || line.charAt(1) != ' ')
+				return -1;
+			char c = line.charAt(0);
+			return ((c >= '0' && c <= '9') || c == '?') ? 1 : -1;
+		}
+		int i = 0;
+		while (i < length) {
+			char c = line.charAt(i);
+			if ((c < '0' || c > '9') && c != '.' && c != '-'
+					&& (i == 0 || (c != 'e' && c != '+')))
+				break;
+			i++;
+		}
+		return (i > 0 && i + 1 < length && line.charAt(i) == ' ') ? i : -1;
+	}
+
+	/**
+	 * @return true if line.substring(0, end) is an integer of more than
+	 * MAX_FAST_DIGITS digits
+	 */
+	private static boolean isLongInteger(String line, int end) {
+		int start = (line.charAt(0) == '-') ? 1 : 0;
+		if (end - start <= MAX_FAST_DIGITS)
+			return false;
+		for (int i = start; i < end; i++) {
+			char c = line.charAt(i);
+			if (c < '0' || c > '9')
+				return false;
+		}
+		return true;
+	}
+
+	private static double qbfValue(char c) {
+		return (c == '?') ? Double.NaN : c - '0';
+	}
+
+	/**
+	 * Same result as Double.parseDouble(line.substring(0, end)) (NaN if it
+	 * is not a number): the short decimals, i.e., almost every value, are
+	 * computed without creating any string.
+	 */
+	private static double smtValue(String line, int end) {
+		boolean negative = line.charAt(0) == '-';
+		long mantissa = 0;
+		int digits = 0;
+		int dot = -1;
+		boolean simple = true;
+		for (int i = negative ? 1 : 0; i < end && simple; i++) {
+			char c = line.charAt(i);
+			if (c == '.') {
+				if (dot >= 0)
+					return Double.NaN; // E.g., "1.2.3"
+				dot = i;
+			} else if (c >= '0' && c <= '9') {
+				mantissa = mantissa * 10 + (c - '0');
+				digits++;
+			} else {
+				simple = false; // Exponent, e.g., "1e-05"
+			}
+		}
+		if (simple && digits == 0)
+			return Double.NaN; // "." or "-"
+		if (simple && digits <= MAX_FAST_DIGITS) { // Exact operands: correctly rounded
+			double value = mantissa / POW10[(dot < 0) ? 0 : end - dot - 1];
+			return negative ? -value : value;
+		}
+		try {
+			return Double.parseDouble(line.substring(0, end));
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package touist;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Drains a stream of a process (stdout or stderr) in its own thread while the
+ * process is running. Reading a stream only after waitFor() (or only while
+ * ready() is true) can block the process as soon as the pipe buffer is full
+ * (e.g. touist printing thousands of warnings) or silently lose the end of
+ * the output.
+ *
+ * The lines are kept in a bounded buffer: once maxChars characters have been
+ * kept, the next lines are read and dropped (see isTruncated()) so that the
+ * process is never blocked.
+ *
+ * @author Maël
+ */
+public class StreamPump {
+	/** Default size of the buffer (in characters) */
+	public final static int DEFAULT_MAX_CHARS = 1 << 20;
+
+	private final StringBuilder content = new StringBuilder();
+	private final CountDownLatch finished = new CountDownLatch(1);
+	private final int maxChars;
+	private volatile boolean truncated = false;
+
+	/**
+	 * Starts draining the stream.
+	 * @param stream the stream (it must not be read by anybody else)
+	 * @param name used for naming the thread
+	 */
+	public StreamPump(InputStream stream, String name) {
+		this(stream, name, DEFAULT_MAX_CHARS);
+	}
+
+	/**
+	 * Starts draining the stream.
+	 * @param stream the stream (it must not be read by anybody else)
+	 * @param name used for naming the thread
+	 * @param maxChars the maximum number of characters that are kept
+	 */
+	public StreamPump(InputStream stream, String name, int maxChars) {
+		this.maxChars = maxChars;
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+		Thread pump = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						append(line);
+					}
+				} catch (IOException e) {
+					// The stream is closed when the process is destroyed
+					// (e.g. the Stop button): what was read is kept
+					System.err.println("StreamPump: " + Thread.currentThread().getName()
+							+ ": " + e.getMessage());
+				} finally {
+					try {
+						reader.close();
+					} catch (IOException e) {
+					}
+					finished.countDown();
+				}
+			}
+		}, name);
+		pump.setDaemon(true);
+		pump.start();
+	}
+
+	private synchronized void append(String line) {
+		if (truncated || content.length() + line.length() + 1 > maxChars) {
+			truncated = true;
+			return;
+		}
+		content.append(line).append('\n');
+	}
+
+	/**
+	 * Blocks until the stream has been closed (the process has exited).
+	 * @return the lines read (each one followed by '\n')
+	 * @throws InterruptedIOException if the calling thread was interrupted
+	 */
+	public String getContent() throws InterruptedIOException {
+		try {
+			finished.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("getContent(): interrupted");
+		}
+		return contentRead();
+	}
+
+	/**
+	 * Blocks until the stream has been closed (the process has exited).
+	 * @param timeout in milliseconds
+	 * @return the lines read (each one followed by '\n')
+	 * @throws TimeoutException if the stream was still open after the timeout
+	 * @throws InterruptedIOException if the calling thread was interrupted
+	 */
+	public String getContent(long timeout) throws InterruptedIOException,
+			TimeoutException {
+		try {
+			if (!finished.await(timeout, TimeUnit.MILLISECONDS))
+				throw new TimeoutException("getContent(): stream still open after " + timeout + "ms");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("getContent(): interrupted");
+		}
+		return contentRead();
+	}
+
+	/**
+	 * Does not block.
+	 * @return the lines read so far
+	 */
+	public synchronized String getContentSoFar() {
+		return content.toString();
+	}
+
+	private synchronized String contentRead() {
+		if (truncated)
+			System.err.println("StreamPump: output truncated to " + maxChars + " characters");
+		return content.toString();
+	}
+
+	/**
+	 * @return true if some lines have been dropped because the buffer was full
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package touist;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Pool of touist processes that are started in advance. touist reads its
+ * whole input from stdin before doing anything, so a process can be started
+ * before we know what it will translate: exec() hands out an already started
+ * process for the given command line (if any) and starts, in background, the
+ * spare process that will be used by the next call with the same command
+ * line. The fork/exec of touist is then out of the way of the linter (called
+ * at each key stroke), the LaTeX view and the solvers.
+ *
+ * Only commands whose behaviour does not depend on the moment they are
+ * started can be pooled: touist opens the files given with -o and --table as
+ * soon as it starts, so a spare process would truncate them.
+ *
+ * The pool can be disabled with -Dtouist.processPool=false.
+ *
+ * @author Maël
+ */
+public class TouistProcessPool {
+	/** Maximum number of different command lines that have a spare process */
+	private final static int MAX_SPARES = 8;
+
+	private static TouistProcessPool instance = null;
+
+	private final boolean enabled;
+	private final ExecutorService spawner;
+	/** Spare processes waiting on their stdin, by command line (LRU order) */
+	private final LinkedHashMap<List<String>, Process> spares =
+			new LinkedHashMap<List<String>, Process>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<List<String>, Process> eldest) {
+			if (size() > MAX_SPARES) {
+				eldest.getValue().destroy();
+				return true;
+			}
+			return false;
+		}
+	};
+
+	public static synchronized TouistProcessPool getInstance() {
+		if (instance == null) {
+			instance = new TouistProcessPool(
+					!"false".equals(System.getProperty("touist.processPool")));
+		}
+		return instance;
+	}
+
+	private TouistProcessPool(boolean enabled) {
+		this.enabled = enabled;
+		this.spawner = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "touist-process-pool");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				shutdown();
+			}
+		});
+	}
+
+	/**
+	 * Gives a started process running the command cmd. The process has not
+	 * read anything on its stdin yet.
+	 * @param cmd the command line (the touist binary and its arguments)
+	 * @return the process
+	 * @throws IOException if the process could not be started
+	 */
+	public Process exec(List<String> cmd) throws IOException {
+		if (!enabled) {
+			return Runtime.getRuntime().exec(cmd.toArray(new String[0]));
+		}
+		final List<String> key = new ArrayList<String>(cmd);
+		Process p;
+		synchronized (this) {
+			p = spares.remove(key);
+		}
+		if (p == null || !isAlive(p)) {
+			p = Runtime.getRuntime().exec(key.toArray(new String[0]));
+		}
+		spawner.execute(new Runnable() {
+			@Override
+			public void run() {
+				startSpare(key);
+			}
+		});
+		return p;
+	}
+
+	private void startSpare(List<String> key) {
+		synchronized (this) {
+			Process spare = spares.get(key);
+			if (spare != null && isAlive(spare))
+				return;
+		}
+		try {
+			Process spare = Runtime.getRuntime().exec(key.toArray(new String[0]));
+			Process previous;
+			synchronized (this) {
+				previous = spares.put(key, spare);
+			}
+			if (previous != null)
+				previous.destroy();
+		} catch (IOException e) {
+			System.err.println("TouistProcessPool: could not start " + key + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Kills every spare process. Called when the JVM exits.
+	 */
+	public synchronized void shutdown() {
+		for (Iterator<Process> it = spares.values().iterator(); it.hasNext();) {
+			it.next().destroy();
+			it.remove();
+		}
+	}
+
+	/**
+	 * For java jre 1.6 and 1.7 compatibility (p.isAlive() is java jre >= 1.8)
+	 */
+	private static boolean isAlive(Process process) {
+		try {
+			process.exitValue();
+			return false;
+		} catch (IllegalThreadStateException e) {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package translation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import entity.SymbolTable;
+
+/**
+ * The clauses given by the translator, kept in memory: this is what was
+ * written in the DIMACS file 'out.cnf' before. The literals of all clauses
+ * are stored one after the other in a single int array, each clause being
+ * terminated by 0 (as in DIMACS).
+ *
+ * @author Maël
+ */
+public class CNF {
+	private final int nbVariables;
+	private final int nbClauses;
+	private final int[] literals;
+
+	/**
+	 * @param literals the clauses, each one terminated by 0
+	 */
+	public CNF(int nbVariables, int nbClauses, int[] literals) {
+		this.nbVariables = nbVariables;
+		this.nbClauses = nbClauses;
+		this.literals = literals;
+	}
+
+	public int getNbVariables() {
+		return nbVariables;
+	}
+
+	public int getNbClauses() {
+		return nbClauses;
+	}
+
+	/**
+	 * @return the clauses one after the other, each one terminated by 0. The
+	 * array must not be modified.
+	 */
+	public int[] getLiterals() {
+		return literals;
+	}
+
+	/**
+	 * Writes the clauses using the DIMACS format.
+	 */
+	public void writeDimacs(Writer out) throws IOException {
+		out.write("p cnf " + nbVariables + " " + nbClauses + "\n");
+		boolean startOfClause = true;
+		for (int literal : literals) {
+			if (!startOfClause)
+				out.write(' ');
+			out.write(Integer.toString(literal));
+			startOfClause = (literal == 0);
+			if (startOfClause)
+				out.write('\n');
+		}
+	}
+
+	/**
+	 * Reads what 'touist --sat' prints on its stdout when no --table file is
+	 * given: the literals map as comment lines ('c name code') followed by
+	 * the DIMACS clauses. For example:
+	 *
+	 *     c a 1
+	 *     c b 2
+	 *     p cnf 2 1
+	 *     1 -2 0
+	 *
+	 * @param in the stdout of the translator
+	 * @param symbols where the literals map is put (the comment lines are
+	 * ignored if null)
+	 * @return the clauses
+	 * @throws IOException if the DIMACS content is wrong
+	 */
+	public static CNF read(BufferedReader in, SymbolTable symbols)
+			throws IOException {
+		int nbVariables = 0;
+		int nbClauses = 0;
+		int[] literals = new int[1024];
+		int size = 0;
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (line.isEmpty())
+				continue;
+			char first = line.charAt(0);
+			if (first == 'c') {
+				int sep = line.lastIndexOf(' ');
+				if (symbols != null && line.startsWith("c ") && sep > 2) {
+					symbols.put(parseInt(line, sep + 1, line.length()),
+							line.substring(2, sep));
+				}
+			} else if (first == 'p') {
+				String[] header = line.trim().split(" +");
+				if (header.length != 4 || !header[1].equals("cnf"))
+					throw new IOException("CNF.read(): wrong DIMACS header '" + line + "'");
+				nbVariables = Integer.parseInt(header[2]);
+				nbClauses = Integer.parseInt(header[3]);
+				// Each clause has at least one literal and its terminating 0
+				if (size + 2 * nbClauses > literals.length)
+					literals = Arrays.copyOf(literals, size + 2 * nbClauses);
+			} else {
+				int i = 0;
+				final int length = line.length();
+				while (i < length) {
+					while (i < length && line.charAt(i) == ' ')
+						i++;
+					int start = i;
+					while (i < length && line.charAt(i) != ' ')
+						i++;
+					if (start == i)
+						break;
+					if (size == literals.length)
+						literals = Arrays.copyOf(literals, 2 * size);
+					literals[size++] = parseInt(line, start, i);
+				}
+			}
+		}
+		return new CNF(nbVariables, nbClauses, Arrays.copyOf(literals, size));
+	}
+
+	private static int parseInt(String s, int start, int end) throws IOException {
+		boolean negative = s.charAt(start) == '-';
+		int value = 0;
+		for (int i = negative ? start + 1 : start; i < end; i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9')
+				throw new IOException("CNF.read(): '" + s.substring(start, end)
+						+ "' is not a literal");
+			value = 10 * value + (c - '0');
+		}
+		return negative ? -value : value;
+	}
+}
@@ -0,0 +1,294 @@
+/*
+ *
+ * Project TouIST, 2015. Easily formalize and solve real-world sized problems
+ * using propositional logic and linear theory of reals with a nice GUI.
+ *
+ * https://github.com/touist/touist
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Alexis Comte, Abdelwahab Heba, Olivier Lezaud,
+ *     Skander Ben Slimane, Maël Valais
+ *
+ */
+
+package translation;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import entity.SymbolTable;
+
+/**
+ * Cache of the translations done by TranslatorSAT. An entry is found using
+ * the hash of the TouIST source, of the translator options and of the touist
+ * binary (see key()) and holds the clauses, the literals map and the stderr
+ * of the translator (from which the TranslationError list is parsed again).
+ *
+ * There are two tiers: the last MEMORY_ENTRIES entries are kept in memory and
+ * the last DISK_ENTRIES are kept on disk (in the 'cache' directory of the temp
+ * directory) so that they survive a restart of TouIST. The disk tier is
+ * written in background so that put() never waits for the file system.
+ *
+ * @author Maël
+ */
+public class TranslationCache {
+	private final static int MEMORY_ENTRIES = 8;
+	private final static int DISK_ENTRIES = 64;
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+	/**
+	 * The literals map of an entry read from disk is kept in a file mapped in
+	 * memory (instead of the heap) above this size
+	 */
+	private final static long MAPPED_SYMBOLS_MIN_BYTES = 16 << 20;
+
+	public static class Entry {
+		private final boolean ok;
+		private final String stderr;
+		private final CNF cnf;
+		private final SymbolTable symbols;
+
+		private Entry(boolean ok, String stderr, CNF cnf, SymbolTable symbols) {
+			this.ok = ok;
+			this.stderr = stderr;
+			this.cnf = cnf;
+			this.symbols = symbols;
+		}
+
+		/** @return true if the translation went well */
+		public boolean isOk() {
+			return ok;
+		}
+
+		/** @return the stderr given by the translator */
+		public String getStderr() {
+			return stderr;
+		}
+
+		/** @return the clauses (null if !isOk()) */
+		public CNF getCNF() {
+			return cnf;
+		}
+
+		/** @return the literals map (must not be modified) */
+		public SymbolTable getSymbolTable() {
+			return symbols;
+		}
+	}
+
+	private final File directory;
+	private final LinkedHashMap<String, Entry> memory =
+			new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, TranslationCache.Entry> eldest) {
+			return size() > MEMORY_ENTRIES;
+		}
+	};
+	private final ExecutorService diskWriter = Executors.newSingleThreadExecutor(
+			new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "touist-translation-cache");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	/**
+	 * @param directory where the disk tier is stored (created if needed)
+	 */
+	public TranslationCache(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * @param source the TouIST source
+	 * @param options the options given to the translator
+	 * @return the key of the translation of source with these options
+	 */
+	public String key(String source, List<String> options) {
+		MessageDigest sha;
+		try {
+			sha = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // Every JRE has SHA-256
+		}
+		// A new touist binary may translate differently
+		String touistBin = touist.TouIST.getTouistBin();
+		sha.update((touistBin + "\0" + new File(touistBin).lastModified() + "\0").getBytes(UTF8));
+		for (String option : options) {
+			sha.update((option + "\0").getBytes(UTF8));
+		}
+		sha.update(source.getBytes(UTF8));
+		StringBuilder hex = new StringBuilder();
+		for (byte b : sha.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * @return the entry or null if this translation is not in the cache
+	 */
+	public synchronized Entry get(String key) {
+		Entry entry = memory.get(key);
+		if (entry != null) {
+			return entry;
+		}
+		entry = readFromDisk(key);
+		if (entry != null) {
+			memory.put(key, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Adds a translation to the cache.
+	 * @param ok true if the translation went well
+	 * @param stderr the stderr of the translator
+	 * @param cnf the clauses (ignored if !ok)
+	 * @param symbols the literals map (ignored if !ok)
+	 * @return the new entry
+	 */
+	public synchronized Entry put(final String key, boolean ok, String stderr,
+			CNF cnf, SymbolTable symbols) {
+		final Entry entry = new Entry(ok, stderr, ok ? cnf : null,
+				ok ? symbols : new SymbolTable());
+		memory.put(key, entry);
+		diskWriter.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					writeToDisk(key, entry);
+					cleanDisk();
+				} catch (IOException e) {
+					System.err.println("TranslationCache: could not write '" + key + "' in '"
+							+ directory + "': " + e.getMessage());
+				}
+			}
+		});
+		return entry;
+	}
+
+	private File file(String key, String extension) {
+		return new File(directory, key + extension);
+	}
+
+	private Entry readFromDisk(String key) {
+		File status = file(key, ".status");
+		if (!status.exists())
+			return null;
+		try {
+			String content = new String(Files.readAllBytes(status.toPath()), UTF8);
+			int eol = content.indexOf('\n');
+			boolean ok = content.substring(0, eol).equals("ok");
+			String stderr = content.substring(eol + 1);
+			SymbolTable symbols = new SymbolTable();
+			CNF cnf = null;
+			if (ok) {
+				BufferedReader in = new BufferedReader(new InputStreamReader(
+						Files.newInputStream(file(key, ".cnf").toPath()), UTF8));
+				try {
+					cnf = CNF.read(in, null);
+				} finally {
+					in.close();
+				}
+				File symbolsFile = file(key, ".symbols");
+				symbols = SymbolTable.map(symbolsFile);
+				if (symbolsFile.length() < MAPPED_SYMBOLS_MIN_BYTES)
+					symbols = symbols.copyToHeap();
+			}
+			status.setLastModified(System.currentTimeMillis()); // LRU on disk
+			return new Entry(ok, stderr, cnf, symbols);
+		} catch (IOException | RuntimeException e) {
+			System.err.println("TranslationCache: ignoring corrupted entry '" + key + "': " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * The '.cnf' file holds the DIMACS clauses and the '.symbols' file the
+	 * literals map (see SymbolTable.writeTo()).
+	 */
+	private void writeToDisk(String key, Entry entry) throws IOException {
+		Files.createDirectories(directory.toPath());
+		if (entry.isOk()) {
+			Writer out = new BufferedWriter(new OutputStreamWriter(
+					Files.newOutputStream(file(key, ".cnf").toPath()), UTF8));
+			try {
+				entry.getCNF().writeDimacs(out);
+			} finally {
+				out.close();
+			}
+			OutputStream symbols = new BufferedOutputStream(
+					Files.newOutputStream(file(key, ".symbols").toPath()));
+			try {
+				entry.getSymbolTable().writeTo(symbols);
+			} finally {
+				symbols.close();
+			}
+		}
+		// The status file is written last: an entry without it is ignored
+		File tmp = file(key, ".status.tmp");
+		Files.write(tmp.toPath(), ((entry.isOk() ? "ok" : "error") + "\n"
+				+ entry.getStderr()).getBytes(UTF8));
+		Files.move(tmp.toPath(), file(key, ".status").toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Removes the least recently used entries so that at most DISK_ENTRIES
+	 * entries are kept on disk.
+	 */
+	private synchronized void cleanDisk() {
+		File[] statuses = directory.listFiles(new java.io.FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(".status");
+			}
+		});
+		if (statuses == null || statuses.length <= DISK_ENTRIES)
+			return;
+		Arrays.sort(statuses, new Comparator<File>() {
+			@Override
+			public int compare(File f1, File f2) {
+				return Long.compare(f1.lastModified(), f2.lastModified());
+			}
+		});
+		for (int i = 0; i < statuses.length - DISK_ENTRIES; i++) {
+			String key = statuses[i].getName().replace(".status", "");
+			statuses[i].delete();
+			file(key, ".cnf").delete();
+			file(key, ".symbols").delete();
+		}
+	}
+}
@@ -26,7 +26,6 @@ package translation;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -37,10 +36,10 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
+import entity.SymbolTable;
+import touist.StreamPump;
 import touist.TouIST;
 
 /**
@@ -48,9 +47,10 @@ import touist.TouIST;
  * @Modified by Mael
  */
 public class TranslatorSAT {
-	final private String outputFilePath = touist.TouIST.getWhereToSaveTemp() + File.separator + "out.cnf";
-	final private String outputTableFilePath = touist.TouIST.getWhereToSaveTemp() + File.separator + "out.table";
-	private Map<Integer,String> literalsMap = new HashMap<Integer,String>();
+	final private TranslationCache cache = new TranslationCache(
+			new File(touist.TouIST.getWhereToSaveTemp() + File.separator + "cache"));
+	private CNF cnf = null;
+	private SymbolTable symbols = new SymbolTable();
 	private List<TranslationError> errors = new ArrayList<TranslationError>();
 	private Process p;
 	private List<String> options = new ArrayList<String>();
@@ -71,37 +71,55 @@ public class TranslatorSAT {
 		return translate(reader); 
 	}
 	/**
-	 * Calls the translator/compiler to transform the ".bigand" file to a
-	 * ".dimacs" file (along with a "mapping" file). This method also calls the
-	 * parsing methods parseErrors and (if the translation actually
-	 * passed) parseLiteralsMapFile.
+	 * Calls the translator/compiler to transform the TouIST source into
+	 * clauses (along with a "mapping"). The source is written on the stdin of
+	 * touist and the clauses and the mapping are read from its stdout (see
+	 * CNF.read()): no file is written. This method also calls the parsing
+	 * method TranslationError.parse.
 	 *
-	 * @param touistlFilePath is the name of the file that the
-	 * translator/compiler is going to compute. The translation is handled by a
-	 * third-part program called by an system "exec" command. The translator can
-	 * return three kind of things : - A ".dimacs" file and a "mapping" file if
-	 * everything goes well. The mapping file allows the user to get the
-	 * original litteral name instead of the integer notation used by the
-	 * ".dimacs" file. Note that it can be used after the solver gives results.
+	 * @param reader is the TouIST source that the translator/compiler is going
+	 * to compute. The translation is handled by a third-part program called by
+	 * an system "exec" command. The translator can return three kind of
+	 * things : - The clauses and a "mapping" if everything goes well. The
+	 * mapping allows the user to get the original litteral name instead of the
+	 * integer notation used by the clauses. Note that it can be used after the
+	 * solver gives results.
 	 * - If anything goes wrong (syntax error, semantic error, wrong type...),
 	 * the translator gives his error message on the "stderr" file.
 	 *
 	 * @return true if the translation went well (migth have generated some
 	 * warning though), false of fatal errors (syntax/semantic errors) happened
 	 *
+	 * If the same source has already been translated with the same options,
+	 * the translator is not called and the result is taken from the
+	 * TranslationCache.
+	 *
 	 * @throws IOException
 	 * @throws InterruptedException
 	 */
 	public boolean translate(BufferedReader reader) throws IOException, InterruptedException {
 		/* return_code from the Touistl translator (see touist.ml): */
 		final int OK = 0;
+		final int TRANSL_ERROR = 50;
 
 		/*
 		 * Syntax of errors COMPILE_WITH_LINE_NUMBER_ERROR:
 		 * num_row:num_col: message
 		 */
 		// Check if translatorProgramFilePath is there
-		
+
+		StringBuilder source = new StringBuilder();
+		String s = "";
+		while ((s = reader.readLine())!=null) {
+			source.append(s).append('\n');
+		}
+		String key = cache.key(source.toString(), options);
+		TranslationCache.Entry cached = cache.get(key);
+		if (cached != null) {
+			System.out.println("translate(): translation found in cache ("+key+")");
+			return useTranslation(cached);
+		}
+
 		String pathtouist = touist.TouIST.getTouistBin();
 
 		List<String> cmd = new ArrayList<String>();
@@ -109,48 +127,59 @@ public class TranslatorSAT {
 		cmd.add(pathtouist);
 		cmd.add("--sat");
 		cmd.add("-");
-		cmd.add("--table");
-		cmd.add(outputTableFilePath);
-		cmd.add("-o");
-		cmd.add(outputFilePath);
 		cmd.add("--error-format");
 		cmd.add("%l:%c:%b:%B: %t: %m");
 		cmd.addAll(options);
 		
         System.out.println("translate(): cmd executed: "+cmd.toString());
 		
-        this.p = Runtime.getRuntime().exec(cmd.toArray(new String[0]));
+        // Without -o and --table, touist prints the literals map (as 'c name
+        // code' comments) and the clauses on its stdout: nothing goes through
+        // the disk, so the process can be taken from the pool
+        this.p = touist.TouistProcessPool.getInstance().exec(cmd);
+
+        // stderr is drained by another thread so that neither of the pipes
+        // can fill up and block touist while we are reading the other one
+        StreamPump stderr = new StreamPump(p.getErrorStream(), "touist-translate-stderr");
 
         BufferedWriter toProcess = new BufferedWriter(new OutputStreamWriter(p.getOutputStream()));
-        String s = "";
-        while ((s = reader.readLine())!=null) {
-        	toProcess.write(s + "\n");
+        try {
+            toProcess.write(source.toString());
+        } finally {
+            toProcess.close();
+        }
+
+        SymbolTable map = new SymbolTable();
+        BufferedReader fromProcess = new BufferedReader(new InputStreamReader(p.getInputStream()));
+        CNF clauses = null;
+        try {
+            clauses = CNF.read(fromProcess, map);
+        } catch (IOException e) {
+            // Wrong output (or touist killed): the return code tells why
+            System.err.println("translate(): could not read the clauses: "+e.getMessage());
+        } finally {
+            fromProcess.close();
         }
-        toProcess.flush();
-        toProcess.close();
-		
         int return_code = p.waitFor();
-        
-		BufferedReader fromProcess = new BufferedReader(new InputStreamReader(p.getInputStream()));
-		List<String> linesStdout = new ArrayList<String>();
-		while (fromProcess.ready())
-			linesStdout.add(fromProcess.readLine());
-
-		BufferedReader fromProcessErr = new BufferedReader(new InputStreamReader(
-				this.p.getErrorStream()));
-		String linesStdErr = "";
-		while (fromProcessErr.ready()) {
-			linesStdErr += fromProcessErr.readLine() + "\n";
+        String linesStdErr = stderr.getContent();
+
+		if((return_code != OK && return_code != TRANSL_ERROR)
+				|| (return_code == OK && clauses == null)) {
+			// E.g., touist has been killed: nothing to be cached
+			errors = TranslationError.parse(linesStdErr);
+			return false;
 		}
-		fromProcessErr.close();
-		fromProcess.close();
+		return useTranslation(cache.put(key, return_code == OK, linesStdErr,
+				clauses, map));
+	}
 
-		errors = TranslationError.parse(linesStdErr);
-		
-		if(return_code == OK) {
-			parseLiteralsMapFile(outputTableFilePath);
+	private boolean useTranslation(TranslationCache.Entry translation) {
+		errors = TranslationError.parse(translation.getStderr());
+		if (translation.isOk()) {
+			cnf = translation.getCNF();
+			symbols = translation.getSymbolTable();
 		}
-		return return_code == OK;
+		return translation.isOk();
 	}
 
 	/**
@@ -158,10 +187,10 @@ public class TranslatorSAT {
 	 * between the DIMACS integers and the real literals names. This map is used
 	 * by the Solver instance.
 	 * @warning This table is NOT the same as the table returned by Solver class
-	 * @return the map
+	 * @return the map (see SymbolTable)
 	 */
-	public Map<Integer,String> getLiteralsMap() {
-		return literalsMap;
+	public SymbolTable getSymbolTable() {
+		return symbols;
 	}
         
         public Process getP(){
@@ -169,11 +198,12 @@ public class TranslatorSAT {
         }
 
 	/**
-	 * Allows the user to get the path of the generated DIMACS file.
-	 * @return the file path
+	 * Allows the user to get the clauses given by the translator (they are
+	 * kept in memory, no DIMACS file is written).
+	 * @return the clauses
 	 */
-	public String getDimacsFilePath() {
-		return outputFilePath;
+	public CNF getCNF() {
+		return cnf;
 	}
 
 	/**
@@ -184,33 +214,4 @@ public class TranslatorSAT {
 	public List<TranslationError> getErrors() {
 		return errors;
 	}
-
-	/**
-	 * Method used by Translator.translate() to parse the literals map file that
-	 * holds the matching names for the given DIMACS integers.
-	 * @param literalsMapFilePath
-	 * @throws FileNotFoundException
-	 * @throws IOException
-	 */
-	private void parseLiteralsMapFile(String literalsMapFilePath)
-			throws FileNotFoundException, IOException {
-		/*
-		 * Example of Table/map file:
-		 * 		A(b) 3
-		 * 		B(a) 4
-		 * 		C(a) 1
-		 * 		B(b) 2
-		 */
-		File TR = new File(literalsMapFilePath);
-		BufferedReader br = new BufferedReader(new FileReader(TR));
-		String line = "";
-		while (br.ready()) {
-			line = br.readLine();
-                        int sep = line.lastIndexOf(' ');
-			String literalString = line.substring(0,sep);
-			int literalCode = Integer.parseInt(line.substring(sep+1));
-			literalsMap.put(literalCode, literalString);
-		}
-		br.close();
-	}
 }
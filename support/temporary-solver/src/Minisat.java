@@ -22,9 +22,12 @@
  */
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 
 import org.sat4j.minisat.SolverFactory;
 import org.sat4j.reader.DimacsReader;
@@ -38,6 +41,8 @@ import org.sat4j.tools.ModelIterator;
  * @author Abdel
  */
 public class Minisat {
+    /** The models written are flushed at least every MAX_FLUSH_DELAY ms */
+    private static final long MAX_FLUSH_DELAY = 100;
 
     /**
      * @param args the command line arguments
@@ -45,7 +50,8 @@ public class Minisat {
     //Use : javac -cp sat4j-sat.jar Minisat.java to compil program
     // &
     //java -cp .:sat4j-sat.jar Minisat DimacsFile to run it
-    //press 1 given Next Model
+    //press N (N >= 1) to get the N next models (one model per line; if less
+    //than N models are left, the program exits after printing them)
     //and 0 to exiting prog
     public static void main(String[] args) throws ParseFormatException, IOException, ContradictionException {
 
@@ -64,16 +70,43 @@ public class Minisat {
             boolean unsat=true;
             // Buffered Input Reader will able to communicate(pipe) with Main Program
             BufferedReader reader1 =new BufferedReader(new InputStreamReader(System.in));
-            // 1 to Run each model and 0 to exit program.
-            while(problem.isSatisfiable() && Integer.parseInt(reader1.readLine())==1) {
-                unsat=false;
-                //System.out.println("Satisfiable !");
-                //problem model return int[] Satisfiable model
-                System.out.println(reader.decode(problem.model()));
+            // The models of a batch are flushed together, except the first
+            // one (so that the first model does not wait for the whole batch)
+            // and the ones that have waited more than MAX_FLUSH_DELAY
+            PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+            // N to get the N next models and 0 to exit program.
+            String request;
+            boolean exhausted = false;
+            while(!exhausted && (request = reader1.readLine()) != null) {
+                if(request.trim().isEmpty())
+                    continue;
+                int batchSize = Integer.parseInt(request.trim());
+                if(batchSize <= 0)
+                    break;
+                long lastFlush = System.currentTimeMillis();
+                for(int i = 0; i < batchSize; i++) {
+                    if(i > 1 && System.currentTimeMillis() - lastFlush > MAX_FLUSH_DELAY) {
+                        out.flush(); // The next search could be long
+                        lastFlush = System.currentTimeMillis();
+                    }
+                    if(!problem.isSatisfiable()) {
+                        exhausted = true;
+                        break;
+                    }
+                    unsat=false;
+                    //problem model return int[] Satisfiable model
+                    out.println(reader.decode(problem.model()));
+                    if(i == 0) {
+                        out.flush();
+                        lastFlush = System.currentTimeMillis();
+                    }
+                }
+                out.flush();
             }
-            if(unsat)
+            if(exhausted && unsat) {
                 System.err.println("Unsatisfiable !");
                 System.exit(1);
+            }
 
         //Catch Exceptions....
         } catch (FileNotFoundException e) {